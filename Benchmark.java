@@ -0,0 +1,421 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program benchmarks the packet codec, the checksum, the Network's forwarding path and an end-to-end loopback transfer,
+* so performance changes can be measured and compared.
+* Micro benchmarks run an operation in timed batches after a warm-up and report operations per second and bytes allocated per operation,
+* read from the benchmarking thread's allocation counter.  The relay benchmark forwards packets through a NetworkWorker to a UDP port
+* nobody reads, the cost of one packet through the Network minus its receive, and then through a small routing table churned by many flows,
+* checking that the flow sending every other packet is never evicted.  The loopback benchmark runs a Network, Receiver and Sender in this JVM
+* (see Launcher) over 127.0.0.1, or over the in-memory transport with --transport memory to leave out the system calls,
+* and reports the goodput of a stream for every combination of loss percent and segment size.
+* The daemon benchmark sends small messages one at a time through a SenderDaemon, over the same three roles, and reports their latency.
+*
+* Run "java Benchmark [--benchmark codec|checksum|relay|loopback|daemon|all] [--seconds N] [--loss 0,1,5] [--segment-sizes 512,1400,8192]
+*                     [--bytes N] [--message-size N] [--mode saw|gbn|sr] [--window N] [--port N] [--transport udp|memory]"
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Benchmark.java
+*/
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+// Benchmark class
+public final class Benchmark {
+    private static final long WARMUP_NANOS = 1000000000L;  // Warm-up before each measurement so the JIT has compiled the operation
+    private static final int BATCH = 1000;                 // Operations between clock reads
+    private static final int CHURN_TABLE_SIZE = 64;        // Flows held by the routing table of the churned relay benchmark
+    private static final int CHURN_FLOWS = 4096;           // Cold flows cycled through it
+    private static final int HOT_PORT = 20000;             // Source port of its hot flow, the cold flows use the ports above
+
+    // Results are folded in here so the JIT cannot remove the benchmarked work
+    private static volatile long _sink;
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Benchmark() {
+
+    }
+
+    /**
+     * @return - Bytes allocated by the calling thread so far
+     */
+    private static long allocatedBytes(){
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Runs an operation in batches for a warm-up period and then for the measured period, and prints its throughput and allocation
+     * @param name        - Name printed with the result
+     * @param seconds     - Length of the measured period
+     * @param operation   - Operation to measure, returning a value that depends on its work
+     */
+    private static void measure(String name, int seconds, LongSupplier operation){
+        long sink = 0;
+
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < warmupEnd){
+            for (int i = 0; i < BATCH; i++){
+                sink += operation.getAsLong();
+            }
+        }
+
+        long operations = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        long now;
+        do {
+            for (int i = 0; i < BATCH; i++){
+                sink += operation.getAsLong();
+            }
+            operations += BATCH;
+            now = System.nanoTime();
+        } while (now < end);
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        _sink += sink;
+        System.out.println(String.format("%-36s %,16.0f ops/s %10.1f ns/op %10.1f B/op",
+                                         name, operations * 1e9 / (now - start), (now - start) / (double) operations,
+                                         allocated / (double) operations));
+    }
+
+    /**
+     * Benchmarks building, checksumming and parsing segments and filling the datagram packet they are sent in
+     * @param seconds - Measured seconds of each benchmark
+     * @param payload - Payload size of the segments
+     */
+    private static void codec(int seconds, int payload){
+        byte[] message = new byte[payload];
+        new Random(1).nextBytes(message);
+        NetworkHeader header = new NetworkHeader().wrap(new byte[NetworkHeader.HEADER_SIZE + payload]);
+        NetworkHeader reader = new NetworkHeader();
+        Utility utility = new Utility();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        DatagramPacket packet = new DatagramPacket(new byte[0], 0);
+        int[] seq = new int[1];
+
+        measure("encode segment (" + payload + " B)", seconds, () -> {
+            header.set(0x7F000001, 7000, 0x7F000001, 6000, seq[0]++, 0, 0, payload, 1);
+            header.putPayload(message, 0, payload);
+            header.updateChecksum();
+            return header.checksum();
+        });
+
+        header.updateChecksum();
+        byte[] encoded = header.buffer().array();
+        measure("decode segment (" + payload + " B)", seconds, () -> {
+            NetworkHeader view = reader.wrap(encoded);
+            if (!view.verifyChecksum(NetworkHeader.HEADER_SIZE + payload)){
+                return -1;
+            }
+            return view.seq() + view.ack() + view.length() + view.srcPort() + view.destPort();
+        });
+
+        measure("fill datagram packet", seconds, () -> utility.fillDatagramPacket(packet, header, loopback, 5000).getLength());
+
+        measure("create datagram packet", seconds, () -> utility.createDatagramPacket(header, loopback, 5000).getLength());
+    }
+
+    /**
+     * Benchmarks the CRC32C checksum over packets of several sizes
+     * @param seconds - Measured seconds of each benchmark
+     */
+    private static void checksum(int seconds){
+        for (int size : new int[] { NetworkHeader.HEADER_SIZE, 64, 1400, 8192, NetworkHeader.MAX_PACKET_SIZE }){
+            int payload = size - NetworkHeader.HEADER_SIZE;
+            NetworkHeader header = new NetworkHeader().wrap(new byte[size]);
+            header.set(0x7F000001, 7000, 0x7F000001, 6000, 1, 0, 0, payload, 1);
+            measure("checksum (" + size + " B)", seconds, header::computeChecksum);
+        }
+    }
+
+    /**
+     * Benchmarks forwarding packets through a NetworkWorker without injected faults, as the Network does after receiving them
+     * @param seconds - Measured seconds of each benchmark
+     * @param port    - Port of the UDP socket the packets are forwarded to, which is never read
+     */
+    private static void relay(int seconds, int port){
+        BufferPool pool = new BufferPool(NetworkHeader.MAX_PACKET_SIZE, 4, true);
+        try (Transport channel = Transport.open(Transport.Kind.UDP, 0); Transport sink = Transport.open(Transport.Kind.UDP, port)) {
+            NetworkWorker worker = new NetworkWorker(0, channel, pool, null, null, new LossModel(0), 1, 0, 0, null, null,
+                                                     FlowTable.DEFAULT_MAX_FLOWS);
+            for (int size : new int[] { NetworkHeader.HEADER_SIZE, 1400, 8192 }){
+                NetworkHeader header = new NetworkHeader().wrap(new byte[size]);
+                header.set(0x7F000001, 7000, 0x7F000001, sink.localPort(), 1, 0, 0, size - NetworkHeader.HEADER_SIZE, 1);
+                header.updateChecksum();
+                byte[] encoded = header.buffer().array();
+
+                // Each packet is copied into a pooled buffer, as receiving it would, and the worker returns the buffer to the pool
+                measure("relay packet (" + size + " B)", seconds, () -> {
+                    ByteBuffer packet = pool.acquire();
+                    packet.put(encoded).flip();
+                    worker.process(packet);
+                    return packet.limit();
+                });
+            }
+
+            // Every other packet belongs to one hot flow, the rest to far more cold flows than the table holds
+            NetworkWorker churned = new NetworkWorker(0, channel, pool, null, null, new LossModel(0), 1, 0, 0, null, null, CHURN_TABLE_SIZE);
+            NetworkHeader header = new NetworkHeader().wrap(new byte[NetworkHeader.HEADER_SIZE]);
+            long[] sent = new long[2];     // Packets sent in total, and on the hot flow
+            measure("relay packet, " + CHURN_FLOWS + " flows through " + CHURN_TABLE_SIZE, seconds, () -> {
+                long n = sent[0]++;
+                int sourcePort = (n % 2 == 0) ? HOT_PORT : HOT_PORT + 1 + (int) (n / 2 % CHURN_FLOWS);
+                if (sourcePort == HOT_PORT){
+                    sent[1]++;
+                }
+                header.set(0x7F000001, sourcePort, 0x7F000001, sink.localPort(), 1, 0, 0, 0, 1);
+                header.updateChecksum();
+                ByteBuffer packet = pool.acquire();
+                packet.put(header.buffer().array(), 0, NetworkHeader.HEADER_SIZE).flip();
+                churned.process(packet);
+                return packet.limit();
+            });
+
+            // An evicted hot flow would have started over with fresh counters
+            Flow hot = churned.flow(new Flow.Key().set(header.set(0x7F000001, HOT_PORT, 0x7F000001, sink.localPort(), 1, 0, 0, 0, 1)));
+            if (hot == null || hot.packets != sent[1]){
+                Log.error("Error: Hot flow evicted, " + ((hot == null) ? 0 : hot.packets) + " of its " + sent[1] + " packets counted");
+                System.out.println("hot flow survives eviction                   FAILED");
+            } else {
+                System.out.println("hot flow survives eviction                   OK, " + hot.packets + " packets");
+            }
+        } catch (IOException e) {
+            Log.error("Error: Unable to open the relay benchmark's sockets");
+        }
+    }
+
+    /**
+     * Streams bytes from a Sender through a Network to a Receiver, all in this JVM, and measures the goodput
+     * @param transport   - Transport the three roles talk over
+     * @param port        - First of the three consecutive ports used by the Network, Receiver and Sender
+     * @param mode        - Retransmission mode
+     * @param windowSize  - Window size
+     * @param payloadSize - Segment payload size
+     * @param lostPercent - Percent of packets the Network loses
+     * @param data        - Bytes to stream
+     * @return            - Goodput in bytes per second; otherwise, -1 if the transfer failed
+     */
+    private static double loopback(Transport.Kind transport, int port, WindowMode mode, int windowSize, int payloadSize, int lostPercent, byte[] data){
+        Network network = new Network(port, new DelayModel(DelayModel.Distribution.FIXED, 0, 0, DelayModel.DEFAULT_SHAPE), 1);
+        network.setTransport(transport);
+        if (network.createSocket() < 0){
+            return -1;
+        }
+
+        Receiver receiver = new Receiver(port + 1, mode, windowSize);
+        receiver.setTransport(transport);
+        receiver.setOutput(OutputStream.nullOutputStream(), "benchmark");
+        Sender sender = new Sender(port + 2, "127.0.0.1", String.valueOf(port + 1), "127.0.0.1", String.valueOf(port),
+                                   new RttEstimator(100, RttEstimator.DEFAULT_MIN_RTO, 1000));
+        sender.setTransport(transport);
+        sender.setPayloadSize(payloadSize);
+        if (receiver.createSocket() < 0){
+            network.closeSocket();
+            return -1;
+        }
+        if (sender.resolveAddresses() < 0 || sender.createSocket() < 0){
+            receiver.closeSocket();
+            network.closeSocket();
+            return -1;
+        }
+
+        long elapsed = Launcher.transfer(network, receiver, sender, lostPercent, 0, 0, new ByteArrayInputStream(data), null, mode, windowSize);
+        sender.closeSocket();
+        network.closeSocket();
+        return (elapsed < 0) ? -1 : data.length * 1e9 / elapsed;
+    }
+
+    /**
+     * Sends messages one at a time through a SenderDaemon to a Receiver, through a Network, all in this JVM, and prints their latency:
+     * the time from queueing a message to the ACK of its final segment, the handshake included
+     * @param transport   - Transport the three roles talk over
+     * @param port        - First of the three consecutive ports used by the Network, Receiver and Sender
+     * @param seconds     - Measured seconds, after as long a warm-up
+     * @param mode        - Retransmission mode
+     * @param windowSize  - Window size
+     * @param messageSize - Bytes in each message
+     */
+    private static void daemon(Transport.Kind transport, int port, int seconds, WindowMode mode, int windowSize, int messageSize){
+        Network network = new Network(port, new DelayModel(DelayModel.Distribution.FIXED, 0, 0, DelayModel.DEFAULT_SHAPE), 1);
+        network.setTransport(transport);
+        if (network.createSocket() < 0){
+            return;
+        }
+        Receiver receiver = new Receiver(port + 1, mode, windowSize);
+        receiver.setTransport(transport);
+        receiver.setOutput(OutputStream.nullOutputStream(), "benchmark");
+        Sender sender = new Sender(port + 2, "127.0.0.1", String.valueOf(port + 1), "127.0.0.1", String.valueOf(port),
+                                   new RttEstimator(100, RttEstimator.DEFAULT_MIN_RTO, 1000));
+        sender.setTransport(transport);
+        sender.setPayloadSize(1400);
+        if (receiver.createSocket() < 0){
+            network.closeSocket();
+            return;
+        }
+        if (sender.resolveAddresses() < 0 || sender.createSocket() < 0){
+            receiver.closeSocket();
+            network.closeSocket();
+            return;
+        }
+
+        Thread networkThread = new Thread(() -> network.run(0, 0, 0), "benchmark-network");
+        networkThread.setDaemon(true);
+        networkThread.start();
+        Thread receiverThread = new Thread(receiver::run, "benchmark-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+        SenderDaemon daemon = new SenderDaemon(sender, mode, windowSize, SenderDaemon.DEFAULT_QUEUE_SIZE);
+        daemon.start();
+
+        ByteBuffer message = ByteBuffer.allocate(messageSize);
+        // Every latency is kept, the metrics histogram's buckets are too coarse for messages under 50 us
+        long[] latencies = new long[1024];
+        int messages = 0;
+        long failed = 0;
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        long start = warmupEnd;
+        long end = start + seconds * 1000000000L;
+        long now;
+        do {
+            message.clear();
+            long queuedAt = System.nanoTime();
+            if (daemon.send(message).handle((bytes, error) -> error == null).join()){
+                now = System.nanoTime();
+                if (queuedAt >= warmupEnd){
+                    if (messages == latencies.length){
+                        latencies = Arrays.copyOf(latencies, 2 * messages);
+                    }
+                    latencies[messages++] = now - queuedAt;
+                }
+            } else {
+                now = System.nanoTime();
+                failed++;
+            }
+        } while (now < end);
+
+        // As Launcher.transfer does: stop the roles, wait for their threads, then close every socket
+        daemon.stop();
+        receiver.stop();
+        network.stop();
+        try {
+            receiverThread.join(Launcher.STOP_TIMEOUT_MILLIS);
+            networkThread.join(Launcher.STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        receiver.closeSocket();
+        network.closeSocket();
+        if (messages == 0){
+            System.out.println(String.format("message (%d B)   no message acknowledged, %d failed", messageSize, failed));
+            return;
+        }
+        Arrays.sort(latencies, 0, messages);
+        System.out.println(String.format("message (%d B) %,12.0f msgs/s   p50 %8.1f us   p99 %8.1f us   %d failed",
+                                         messageSize, messages * 1e9 / (now - start), latencies[messages / 2] / 1e3,
+                                         latencies[(int) (messages * 0.99)] / 1e3, failed));
+    }
+
+    /**
+     * Runs the benchmarks chosen on the command line
+     * @param args - Options, see the file header
+     */
+    public static void main(String[] args) {
+        HashMap<String, String> options = new Utility().parseOptions(args, 0);
+        if (options == null){
+            return;
+        }
+
+        // Logging would measure the console instead of the protocol
+        options.putIfAbsent("log-level", "off");
+        if (Log.configure(options) < 0){
+            return;
+        }
+
+        String benchmark = options.getOrDefault("benchmark", "all");
+        WindowMode mode = WindowMode.fromName(options.getOrDefault("mode", "sr"));
+        Transport.Kind transport = Transport.fromName(options.getOrDefault("transport", "udp"));
+        int seconds, bytes, messageSize, windowSize, port;
+        String[] losses = options.getOrDefault("loss", "0,1,5").split(",");
+        String[] segmentSizes = options.getOrDefault("segment-sizes", "512,1400,8192").split(",");
+        try {
+            seconds = Integer.parseInt(options.getOrDefault("seconds", "3"));
+            bytes = Integer.parseInt(options.getOrDefault("bytes", "4000000"));
+            messageSize = Integer.parseInt(options.getOrDefault("message-size", "64"));
+            windowSize = (mode == WindowMode.STOP_AND_WAIT) ? 1 : Integer.parseInt(options.getOrDefault("window", "32"));
+            port = Integer.parseInt(options.getOrDefault("port", "15000"));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Seconds, bytes, message size, window size and port must be integers");
+            return;
+        }
+        if (transport == null){
+            Log.error("Error: Transport must be udp or memory");
+            return;
+        }
+        if (mode == null || windowSize < 1 || windowSize > WindowMode.MAX_WINDOW_SIZE){
+            Log.error("Error: Mode must be saw, gbn or sr and window size between 1 and " + WindowMode.MAX_WINDOW_SIZE);
+            return;
+        }
+
+        if (benchmark.equals("codec") || benchmark.equals("all")){
+            System.out.println("== Codec");
+            codec(seconds, Sender.DEFAULT_PAYLOAD_SIZE);
+            codec(seconds, 1400);
+        }
+
+        if (benchmark.equals("checksum") || benchmark.equals("all")){
+            System.out.println("== Checksum");
+            checksum(seconds);
+        }
+
+        if (benchmark.equals("relay") || benchmark.equals("all")){
+            System.out.println("== Relay");
+            relay(seconds, port);
+        }
+
+        if (benchmark.equals("loopback") || benchmark.equals("all")){
+            System.out.println("== Loopback over " + transport + ", " + mode + " window " + windowSize + ", " + bytes + " bytes per transfer");
+            byte[] data = new byte[bytes];
+            new Random(1).nextBytes(data);
+
+            for (String loss : losses){
+                for (String segmentSize : segmentSizes){
+                    int lostPercent, payloadSize;
+                    try {
+                        lostPercent = Integer.parseInt(loss.trim());
+                        payloadSize = Integer.parseInt(segmentSize.trim());
+                    } catch (NumberFormatException e) {
+                        Log.error("Error: Loss percents and segment sizes must be integers");
+                        return;
+                    }
+
+                    double goodput = loopback(transport, port, mode, windowSize, payloadSize, lostPercent, data);
+                    port += 3;
+                    if (goodput < 0){
+                        System.out.println(String.format("loss %3d%% segment %6d B   transfer failed", lostPercent, payloadSize));
+                    } else {
+                        System.out.println(String.format("loss %3d%% segment %6d B %12.2f MB/s", lostPercent, payloadSize, goodput / 1e6));
+                    }
+                }
+            }
+        }
+
+        if (benchmark.equals("daemon") || benchmark.equals("all")){
+            System.out.println("== Sender daemon over " + transport + ", " + mode + " window " + windowSize);
+            daemon(transport, port, seconds, mode, windowSize, messageSize);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program models one direction of a bottleneck link of the Network: a link rate enforced by a token bucket,
+* a bounded FIFO queue in front of it and a propagation delay behind it.
+* Packets are not held by a thread of their own.  When a packet arrives, the link works out when it will have left the queue
+* (the token bucket releases bytes at the link rate, after a burst of up to --burst bytes) and the Network's timer forwards it
+* once that time and the propagation delay have passed.  Packets still waiting for their turn make up the queue.
+* A full queue drops the arriving packet (drop-tail).  With RED (random early detection), packets are also dropped with a
+* probability that grows with the average queue length between --red-min and --red-max packets, so senders back off before the queue is full.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: BottleneckLink.java
+*/
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// BottleneckLink class
+public class BottleneckLink {
+    public static final int DEFAULT_QUEUE = 100;            // Packets the queue holds
+    public static final int DEFAULT_BURST = 10000;          // Bytes the token bucket sends at once after an idle period
+    public static final double DEFAULT_RED_MAX_P = 0.1;     // RED drop probability at the maximum threshold
+    private static final double RED_WEIGHT = 0.002;         // Weight of each arrival in RED's average queue length
+
+    // Return value of admit when the packet is dropped
+    public static final long DROPPED = -1;
+
+    // Queue management applied when a packet arrives
+    public enum Discipline { DROPTAIL, RED }
+
+    // Metrics shared by both directions
+    public static final LongAdder PACKETS_TAIL_DROPPED = Metrics.counter("rdt_network_link_tail_dropped_total", "Packets dropped because the link queue was full");
+    public static final LongAdder PACKETS_RED_DROPPED = Metrics.counter("rdt_network_link_red_dropped_total", "Packets dropped early by RED");
+    private static final Metrics.Histogram QUEUE_DELAY = Metrics.histogram("rdt_network_link_queue_delay_seconds", "Time packets waited in the link queue");
+
+    private final String        _name;          // Direction of the link, shown in the log
+    private final double        _bytesPerNano;  // Link rate, 0 for unlimited
+    private final double        _burst;         // Token bucket depth in bytes
+    private final int           _queueLimit;    // Packets the queue holds
+    private final long          _propagationNanos;
+    private final Discipline    _discipline;
+    private final double        _redMin;        // Average queue length where RED starts dropping
+    private final double        _redMax;        // Average queue length where RED drops every packet
+    private final double        _redMaxP;
+
+    // Token bucket and queue state, shared by every worker and guarded by the link
+    private double              _tokens;        // Bytes the bucket holds at _tokenTime
+    private long                _tokenTime;     // System.nanoTime() the token count was last brought up to date
+    private long                _lastDeparture; // System.nanoTime() the last queued packet leaves the queue
+    private final long[]        _departures;    // Ring of when each queued packet leaves, oldest first, one slot per packet the queue holds
+    private int                 _head;          // Slot of the oldest queued packet
+    private int                 _queued;        // Packets in the queue
+    private double              _redAverage;    // RED's moving average of the queue length
+    private int                 _redCount = -1; // Packets accepted since the last RED drop, -1 while below the minimum threshold
+    private long                _idleSince;     // System.nanoTime() the queue last became empty
+    private final SplittableRandom _random;     // Draws RED's drops
+
+    /**
+     * Creates one direction of a link
+     * @param name             - Direction of the link, shown in the log
+     * @param bitsPerSecond    - Link rate, 0 for unlimited
+     * @param burst            - Token bucket depth in bytes
+     * @param queueLimit       - Packets the queue holds
+     * @param propagationMillis - Propagation delay in milliseconds
+     * @param discipline       - Drop-tail or RED
+     * @param redMin           - RED minimum threshold in packets
+     * @param redMax           - RED maximum threshold in packets
+     * @param redMaxP          - RED drop probability at the maximum threshold
+     * @param seed             - Seed of RED's drops
+     */
+    public BottleneckLink(String name, long bitsPerSecond, int burst, int queueLimit, double propagationMillis,
+                          Discipline discipline, double redMin, double redMax, double redMaxP, long seed) {
+        this._name = name;
+        this._bytesPerNano = bitsPerSecond / 8e9;
+        this._burst = burst;
+        this._queueLimit = queueLimit;
+        this._departures = new long[queueLimit];
+        this._propagationNanos = (long) (propagationMillis * 1000000L);
+        this._discipline = discipline;
+        this._redMin = redMin;
+        this._redMax = redMax;
+        this._redMaxP = redMaxP;
+        this._random = new SplittableRandom(seed ^ name.hashCode());
+        this._tokens = burst;
+        this._tokenTime = System.nanoTime();
+        this._idleSince = this._tokenTime;
+    }
+
+    /**
+     * Creates one direction of the link from the Network's command line options
+     * @param options - Parsed options; reads bandwidth, burst, queue, aqm, red-min, red-max, red-max-p and propagation
+     * @param name    - Direction of the link
+     * @param seed    - Seed of the Network
+     * @return        - The link, or null if the options are invalid
+     */
+    public static BottleneckLink fromOptions(HashMap<String, String> options, String name, long seed){
+        Discipline discipline;
+        try {
+            discipline = Discipline.valueOf(options.getOrDefault("aqm", "droptail").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.error("Error: Queue discipline must be droptail or red");
+            return null;
+        }
+
+        try {
+            long kbps = Long.parseLong(options.getOrDefault("bandwidth", "0"));
+            int burst = Integer.parseInt(options.getOrDefault("burst", String.valueOf(DEFAULT_BURST)));
+            int queue = Integer.parseInt(options.getOrDefault("queue", String.valueOf(DEFAULT_QUEUE)));
+            double propagation = Double.parseDouble(options.getOrDefault("propagation", "0"));
+            double redMin = Double.parseDouble(options.getOrDefault("red-min", String.valueOf(queue / 4.0)));
+            double redMax = Double.parseDouble(options.getOrDefault("red-max", String.valueOf(queue * 3 / 4.0)));
+            double redMaxP = Double.parseDouble(options.getOrDefault("red-max-p", String.valueOf(DEFAULT_RED_MAX_P)));
+            if (kbps < 0 || burst < 1 || queue < 1 || propagation < 0 || redMin < 0 || redMax <= redMin || redMaxP <= 0 || redMaxP > 1){
+                Log.error("Error: Bandwidth and propagation must not be negative, burst and queue must be at least 1, " +
+                          "RED thresholds must satisfy 0 <= min < max and the RED probability must be in (0, 1]");
+                return null;
+            }
+            return new BottleneckLink(name, kbps * 1000, burst, queue, propagation, discipline, redMin, redMax, redMaxP, seed);
+        } catch (NumberFormatException e) {
+            Log.error("Error: Link parameters must be numbers");
+            return null;
+        }
+    }
+
+    /**
+     * @return - True if the link limits the rate or delays packets, otherwise packets bypass it
+     */
+    public boolean enabled(){
+        return this._bytesPerNano > 0 || this._propagationNanos > 0;
+    }
+
+    /**
+     * @return - Packets waiting in the queue
+     */
+    public synchronized int queueLength(){
+        this.dequeue(System.nanoTime());
+        return this._queued;
+    }
+
+    /**
+     * Forgets the packets that have left the queue
+     * @param now - Current System.nanoTime()
+     */
+    private void dequeue(long now){
+        while (this._queued > 0 && this._departures[this._head] - now <= 0){
+            long departure = this._departures[this._head];
+            this._head = (this._head + 1) % this._departures.length;
+            this._queued--;
+            if (this._queued == 0){
+                this._idleSince = departure;
+            }
+        }
+    }
+
+    /**
+     * Queues a packet on the link
+     * @param length - Bytes of the packet
+     * @return       - System.nanoTime() when the packet arrives at the far end of the link; otherwise, DROPPED
+     */
+    public synchronized long admit(int length){
+        long now = System.nanoTime();
+        if (this._bytesPerNano <= 0){
+            return now + this._propagationNanos;
+        }
+
+        this.dequeue(now);
+        int queued = this._queued;
+        if (queued >= this._queueLimit){
+            PACKETS_TAIL_DROPPED.increment();
+            return DROPPED;
+        }
+        if (this._discipline == Discipline.RED && this.redDrop(queued, now)){
+            PACKETS_RED_DROPPED.increment();
+            return DROPPED;
+        }
+
+        // The packet starts once the one ahead of it has left, and the bucket releases it once it holds enough tokens
+        long start = Math.max(now, this._lastDeparture);
+        this._tokens = Math.min(this._burst, this._tokens + (start - this._tokenTime) * this._bytesPerNano);
+        long departure = start;
+        if (this._tokens >= length){
+            this._tokens -= length;
+        } else {
+            departure += (long) Math.ceil((length - this._tokens) / this._bytesPerNano);
+            this._tokens = 0;
+        }
+        this._tokenTime = departure;
+        this._lastDeparture = departure;
+
+        // A packet sent on at once was never queued.  The limit checked above leaves a free slot
+        if (departure - now > 0){
+            this._departures[(this._head + this._queued) % this._departures.length] = departure;
+            this._queued++;
+        }
+        QUEUE_DELAY.record(departure - now);
+        return departure + this._propagationNanos;
+    }
+
+    /**
+     * RED (Floyd and Jacobson): updates the average queue length and decides whether to drop the arriving packet.
+     * Drops are spread out by raising the probability with the packets accepted since the last drop
+     * @param queued - Packets in the queue
+     * @param now    - Current System.nanoTime()
+     * @return       - True if the packet is to be dropped
+     */
+    private boolean redDrop(int queued, long now){
+        if (queued == 0){
+            // The average decays while the queue is idle, as if an empty queue had been seen for every 1000 bytes the link could have sent
+            double idlePackets = (now - this._idleSince) * this._bytesPerNano / 1000;
+            this._redAverage *= Math.pow(1 - RED_WEIGHT, idlePackets);
+            this._idleSince = now;
+        } else {
+            this._redAverage += RED_WEIGHT * (queued - this._redAverage);
+        }
+
+        if (this._redAverage < this._redMin){
+            this._redCount = -1;
+            return false;
+        }
+        if (this._redAverage >= this._redMax){
+            this._redCount = 0;
+            return true;
+        }
+
+        this._redCount++;
+        double probability = this._redMaxP * (this._redAverage - this._redMin) / (this._redMax - this._redMin);
+        double spread = probability / Math.max(1e-9, 1 - this._redCount * probability);
+        if (this._redCount * probability >= 1 || this._random.nextDouble() < spread){
+            this._redCount = 0;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s link: %.0f kbit/s burst %.0f B queue %d %s propagation %.1f ms", this._name, this._bytesPerNano * 8e6,
+                             this._burst, this._queueLimit, this._discipline, this._propagationNanos / 1e6);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines a fixed size pool of packet buffers shared by the Network's receiving thread, its workers and its delay timer.
+* Buffers are created on first use up to the pool's capacity and then recycled, so forwarding allocates nothing once the pool is warm.
+* Direct buffers let the DatagramChannel receive and send without copying through a temporary buffer of its own.
+* When every buffer is in use the pool is exhausted and the caller drops the packet, like a router that has run out of packet memory.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: BufferPool.java
+*/
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// BufferPool class
+public class BufferPool {
+    private final int                           _bufferSize;    // Bytes in each buffer
+    private final int                           _capacity;      // Most buffers the pool ever creates
+    private final boolean                       _direct;        // True for direct buffers, false for heap buffers
+    private final ArrayBlockingQueue<ByteBuffer> _free;         // Buffers waiting to be reused
+    private final AtomicInteger                 _created = new AtomicInteger();
+
+    /**
+     * Creates an empty pool
+     * @param bufferSize - Bytes in each buffer
+     * @param capacity   - Most buffers the pool creates
+     * @param direct     - True to create direct buffers
+     */
+    public BufferPool(int bufferSize, int capacity, boolean direct) {
+        this._bufferSize = bufferSize;
+        this._capacity = capacity;
+        this._direct = direct;
+        this._free = new ArrayBlockingQueue<ByteBuffer>(capacity);
+    }
+
+    /**
+     * Takes a cleared buffer from the pool, creating one while the pool is below its capacity
+     * @return - A buffer owned by the caller until it is released, or null if every buffer is in use
+     */
+    public ByteBuffer acquire(){
+        ByteBuffer buffer = this._free.poll();
+
+        if (buffer == null){
+            // Claim one of the buffers not yet created, if any are left
+            int created = this._created.get();
+            while (created < this._capacity){
+                if (this._created.compareAndSet(created, created + 1)){
+                    return this._direct ? ByteBuffer.allocateDirect(this._bufferSize) : ByteBuffer.allocate(this._bufferSize);
+                }
+                created = this._created.get();
+            }
+            return null;
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.  The caller must not touch it afterwards
+     * @param buffer - Buffer taken from this pool with acquire
+     */
+    public void release(ByteBuffer buffer){
+        this._free.offer(buffer);
+    }
+
+    /**
+     * @return - Number of buffers currently owned by callers
+     */
+    public int inUse(){
+        return this._created.get() - this._free.size();
+    }
+
+    /**
+     * @return - Number of buffers created so far
+     */
+    public int created(){
+        return this._created.get();
+    }
+}
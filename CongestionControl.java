@@ -0,0 +1,189 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program limits how many segments the Sender keeps in flight so it does not flood the Network relay and the Receiver's socket buffer.
+* The congestion window (cwnd) grows by one segment per ACKed segment in slow start, until it reaches the slow start threshold (ssthresh),
+* and then grows slowly in congestion avoidance.  A loss found by duplicate ACKs cuts it to ssthresh, a timeout back to one segment.
+* NewReno grows by one segment per round trip in congestion avoidance and halves on loss (AIMD, RFC 5681 and RFC 6582).
+* CUBIC grows along a cubic curve of the time since the last loss, centred on the window the loss happened at, and cuts by 30% (RFC 9438).
+* Fixed keeps the configured window, as the Sender did before.  The window is counted in segments and never exceeds the Sender's window size.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: CongestionControl.java
+*/
+
+// CongestionControl class
+public class CongestionControl {
+    public static final int INITIAL_WINDOW = 10;            // Segments in flight before the first ACK (RFC 6928)
+
+    private static final double CUBIC_C = 0.4;              // Scaling constant of the cubic curve, segments per second cubed
+    private static final double CUBIC_BETA = 0.7;           // Window kept on loss
+    private static final double MIN_SSTHRESH = 2;
+
+    // Supported algorithms
+    public enum Algorithm { FIXED, NEWRENO, CUBIC }
+
+    private final Algorithm     _algorithm;
+    private final int           _maxWindow;     // Sender's window size, the cwnd never exceeds it
+    private double              _cwnd;          // Congestion window in segments
+    private double              _ssthresh;      // Slow start threshold in segments
+
+    // CUBIC state of the current congestion avoidance epoch
+    private double              _wMax;          // Window before the last reduction
+    private double              _k;             // Seconds the cubic curve takes to get back to _wMax
+    private long                _epochStart;    // System.nanoTime() when the epoch began, 0 until the first ACK after a reduction
+    private double              _wEstimate;     // Window NewReno would have reached in the epoch (TCP-friendly region)
+
+    /**
+     * Creates the congestion controller of one Sender
+     * @param algorithm - Algorithm adjusting the window
+     * @param maxWindow - Sender's window size in segments
+     */
+    public CongestionControl(Algorithm algorithm, int maxWindow) {
+        this._algorithm = algorithm;
+        this._maxWindow = maxWindow;
+        this._cwnd = (algorithm == Algorithm.FIXED) ? maxWindow : Math.min(INITIAL_WINDOW, maxWindow);
+        this._ssthresh = maxWindow;
+    }
+
+    /**
+     * Looks up an algorithm by its command line name
+     * @param name - "fixed", "newreno" or "cubic" (case insensitive)
+     * @return     - Matching algorithm, or null if the name is unknown
+     */
+    public static Algorithm fromName(String name){
+        try {
+            return Algorithm.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return - Segments the Sender may have in flight, between 1 and its window size
+     */
+    public int window(){
+        return (int) Math.max(1, Math.min(this._maxWindow, this._cwnd));
+    }
+
+    public double cwnd(){
+        return this._cwnd;
+    }
+
+    public double ssthresh(){
+        return this._ssthresh;
+    }
+
+    /**
+     * Grows the window for segments newly acknowledged outside of a fast retransmit
+     * @param segments - Segments the ACK acknowledged for the first time
+     * @param srttNanos - Smoothed round trip time, used by CUBIC
+     */
+    public void onAck(int segments, long srttNanos){
+        if (this._algorithm == Algorithm.FIXED || segments <= 0){
+            return;
+        }
+
+        // Slow start up to ssthresh, the rest of the segments count towards congestion avoidance
+        if (this._cwnd < this._ssthresh){
+            double growth = Math.min(segments, this._ssthresh - this._cwnd);
+            this._cwnd += growth;
+            segments -= (int) growth;
+            if (segments <= 0){
+                this.clamp();
+                return;
+            }
+        }
+
+        if (this._algorithm == Algorithm.NEWRENO){
+            // One segment per window of ACKed segments, about one per round trip
+            this._cwnd += segments / this._cwnd;
+        } else {
+            this.cubicAvoidance(segments, srttNanos);
+        }
+        this.clamp();
+    }
+
+    /**
+     * CUBIC congestion avoidance: aims for the window the cubic curve reaches one round trip from now,
+     * but never grows slower than NewReno would
+     * @param segments  - Segments newly acknowledged
+     * @param srttNanos - Smoothed round trip time
+     */
+    private void cubicAvoidance(int segments, long srttNanos){
+        long now = System.nanoTime();
+        if (this._epochStart == 0){
+            this._epochStart = now;
+            if (this._wMax < this._cwnd){
+                // No loss yet, or the window already passed the last one: start the curve here
+                this._wMax = this._cwnd;
+                this._k = 0;
+            } else {
+                this._k = Math.cbrt((this._wMax - this._cwnd) / CUBIC_C);
+            }
+            this._wEstimate = this._cwnd;
+        }
+
+        double rtt = Math.max(srttNanos, 1000000L) / 1e9;
+        double t = (now - this._epochStart) / 1e9 + rtt;
+        double target = CUBIC_C * Math.pow(t - this._k, 3) + this._wMax;
+
+        // NewReno's growth with CUBIC's decrease: 3 (1 - beta) / (1 + beta) segments per round trip
+        this._wEstimate += 3 * (1 - CUBIC_BETA) / (1 + CUBIC_BETA) * segments / this._cwnd;
+
+        if (this._wEstimate > target){
+            target = this._wEstimate;
+        }
+        if (target > this._cwnd){
+            this._cwnd += Math.min(segments, (target - this._cwnd) / this._cwnd * segments);
+        }
+    }
+
+    /**
+     * Shrinks the window when duplicate ACKs start a fast retransmit
+     * @param inFlight - Segments in flight when the loss was found
+     */
+    public void onFastRetransmit(int inFlight){
+        if (this._algorithm == Algorithm.FIXED){
+            return;
+        }
+        this.reduce(inFlight);
+        this._cwnd = this._ssthresh;
+    }
+
+    /**
+     * Collapses the window to one segment when the retransmission timer expires
+     * @param inFlight - Segments in flight when the timer expired
+     */
+    public void onTimeout(int inFlight){
+        if (this._algorithm == Algorithm.FIXED){
+            return;
+        }
+        this.reduce(inFlight);
+        this._cwnd = 1;
+    }
+
+    private void reduce(int inFlight){
+        if (this._algorithm == Algorithm.NEWRENO){
+            this._ssthresh = Math.max(MIN_SSTHRESH, inFlight / 2.0);
+            return;
+        }
+
+        // Fast convergence: a loss below the last maximum means another flow needs room, release more of it
+        double window = Math.max(this._cwnd, inFlight);
+        this._wMax = (window < this._wMax) ? window * (1 + CUBIC_BETA) / 2 : window;
+        this._ssthresh = Math.max(MIN_SSTHRESH, window * CUBIC_BETA);
+        this._epochStart = 0;
+    }
+
+    private void clamp(){
+        this._cwnd = Math.min(this._cwnd, this._maxWindow);
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s cwnd: %.1f ssthresh: %.1f", this._algorithm, this._cwnd, this._ssthresh);
+    }
+}
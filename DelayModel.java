@@ -0,0 +1,106 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines how long the Network holds back a delayed packet.
+* Delays are drawn from one of several distributions: a fixed delay, uniform jitter around a mean,
+* a normal distribution truncated at zero, or a Pareto distribution that produces a long tail of very late packets.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: DelayModel.java
+*/
+
+import java.util.HashMap;
+import java.util.SplittableRandom;
+
+// DelayModel class
+public class DelayModel {
+    public static final long DEFAULT_MEAN = 4000;   // Milliseconds, the delay the Network always used before
+    public static final double DEFAULT_SHAPE = 2.5; // Pareto shape, must be greater than 1 for the mean to exist
+
+    // Supported distributions
+    public enum Distribution { FIXED, UNIFORM, NORMAL, PARETO }
+
+    private final Distribution  _distribution;
+    private final double        _mean;      // Mean delay in milliseconds
+    private final double        _jitter;    // Half width (uniform) or standard deviation (normal) in milliseconds
+    private final double        _shape;     // Pareto shape parameter
+    private final double        _scale;     // Pareto scale (smallest delay) chosen so the mean matches _mean
+
+    /**
+     * Creates a delay model
+     * @param distribution - Distribution delays are drawn from
+     * @param mean         - Mean delay in milliseconds
+     * @param jitter       - Half width of the uniform range or standard deviation of the normal distribution, in milliseconds
+     * @param shape        - Shape of the Pareto distribution (greater than 1)
+     */
+    public DelayModel(Distribution distribution, double mean, double jitter, double shape) {
+        this._distribution = distribution;
+        this._mean = mean;
+        this._jitter = jitter;
+        this._shape = shape;
+        this._scale = mean * (shape - 1) / shape;
+    }
+
+    /**
+     * Creates the model from the Network's command line options
+     * @param options - Parsed options; reads delay, delay-mean, delay-jitter and delay-shape
+     * @return        - The delay model, or null if the options are invalid
+     */
+    public static DelayModel fromOptions(HashMap<String, String> options){
+        Distribution distribution;
+        try {
+            distribution = Distribution.valueOf(options.getOrDefault("delay", "fixed").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.error("Error: Delay distribution must be fixed, uniform, normal or pareto");
+            return null;
+        }
+
+        try {
+            double mean = Double.parseDouble(options.getOrDefault("delay-mean", String.valueOf(DEFAULT_MEAN)));
+            double jitter = Double.parseDouble(options.getOrDefault("delay-jitter", String.valueOf(mean / 4)));
+            double shape = Double.parseDouble(options.getOrDefault("delay-shape", String.valueOf(DEFAULT_SHAPE)));
+            if (mean < 0 || jitter < 0 || shape <= 1){
+                Log.error("Error: Delay mean and jitter must not be negative and the shape must be greater than 1");
+                return null;
+            }
+            return new DelayModel(distribution, mean, jitter, shape);
+        } catch (NumberFormatException e) {
+            Log.error("Error: Delay parameters must be numbers");
+            return null;
+        }
+    }
+
+    /**
+     * Draws the delay for the next delayed packet
+     * @param random - Random number generator of the packet's flow
+     * @return       - Delay in milliseconds, never negative
+     */
+    public long nextDelayMillis(SplittableRandom random){
+        double delay;
+
+        switch (this._distribution) {
+            case UNIFORM:
+                delay = this._mean + (random.nextDouble() * 2 - 1) * this._jitter;
+                break;
+            case NORMAL:
+                delay = this._mean + random.nextGaussian() * this._jitter;
+                break;
+            case PARETO:
+                // Inverse transform sampling: scale / U^(1/shape)
+                delay = this._scale / Math.pow(1 - random.nextDouble(), 1 / this._shape);
+                break;
+            default:
+                delay = this._mean;
+                break;
+        }
+
+        return Math.max(0, Math.round(delay));
+    }
+
+    @Override
+    public String toString(){
+        return this._distribution.name().toLowerCase() + " delay, mean " + this._mean + " ms";
+    }
+}
@@ -0,0 +1,122 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the per-flow state kept by the Network.
+* A flow is one direction of a transfer, identified by the (source IP, source port, destination IP, destination port) tuple of the network header.
+* Each flow remembers where its packets are forwarded to, draws its faults from its own seeded generator and counts them,
+* so a single Network can relay many transfers at once and report on each of them.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Flow.java
+*/
+
+import java.net.InetSocketAddress;
+import java.util.SplittableRandom;
+
+// Flow class
+public class Flow {
+    public final Key                key;            // (src, dst) tuple of the flow
+    public final InetSocketAddress  destination;    // Resolved once when the flow is first seen
+    public final SplittableRandom   random;         // Draws every fault of the flow, seeded from the Network's seed and the key
+
+    // Loss model state of the flow
+    public boolean lossBurst;       // True while a Gilbert-Elliott flow is in the bad state
+    public int     tracePosition;   // Next packet of the loss trace
+
+    // Fault injection counters of the flow
+    public long packets;
+    public long forwarded;
+    public long lost;
+    public long delayed;
+    public long corrupt;
+    public long dropped;    // Dropped by a full or RED-managed bottleneck link queue
+
+    /**
+     * Creates the state of a newly seen flow
+     * @param key         - Immutable (src, dst) tuple of the flow
+     * @param destination - Address packets of the flow are forwarded to
+     * @param seed        - Seed of the Network, the same seed gives the flow the same faults
+     */
+    public Flow(Key key, InetSocketAddress destination, long seed) {
+        this.key = key;
+        this.destination = destination;
+        this.random = new SplittableRandom(seed ^ (key.src() * 0x9E3779B97F4A7C15L + key.dst()));
+    }
+
+    @Override
+    public String toString(){
+        return this.key + " Packets: " + this.packets + " Forwarded: " + this.forwarded +
+               " Lost: " + this.lost + " Delayed: " + this.delayed + " Corrupt: " + this.corrupt + " Dropped: " + this.dropped;
+    }
+
+    /**
+     * (src, dst) tuple of a flow, each endpoint packed into a long as IPv4 address and port.
+     * A single mutable key can be reused to look flows up without allocating
+     */
+    public static final class Key {
+        private long _src;
+        private long _dst;
+
+        public Key() {
+
+        }
+
+        public Key(long src, long dst) {
+            this._src = src;
+            this._dst = dst;
+        }
+
+        /**
+         * Sets the key from the addresses of a network header
+         * @param header - Network header viewing a packet
+         * @return       - This key
+         */
+        public Key set(NetworkHeader header){
+            this._src = endpoint(header.srcIP(), header.srcPort());
+            this._dst = endpoint(header.destIP(), header.destPort());
+            return this;
+        }
+
+        /**
+         * @return - An immutable copy of this key, suitable for storing in a map
+         */
+        public Key copy(){
+            return new Key(this._src, this._dst);
+        }
+
+        public long src(){
+            return this._src;
+        }
+
+        public long dst(){
+            return this._dst;
+        }
+
+        private static long endpoint(int ip, int port){
+            return ((ip & 0xFFFFFFFFL) << 16) | port;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            if (!(other instanceof Key)){
+                return false;
+            }
+            Key key = (Key) other;
+            return this._src == key._src && this._dst == key._dst;
+        }
+
+        @Override
+        public int hashCode(){
+            long mixed = this._src * 0x9E3779B97F4A7C15L + this._dst;
+            return (int) (mixed ^ (mixed >>> 32));
+        }
+
+        @Override
+        public String toString(){
+            return NetworkHeader.ipToString((int) (this._src >>> 16)) + ":" + (this._src & 0xFFFF) + " -> " +
+                   NetworkHeader.ipToString((int) (this._dst >>> 16)) + ":" + (this._dst & 0xFFFF);
+        }
+    }
+}
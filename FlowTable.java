@@ -0,0 +1,94 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the routing table of a NetworkWorker: the flows it has seen, by the (src, dst) fields of their network header.
+* Each flow holds the InetSocketAddress its packets are forwarded to, resolved once when the flow is first seen,
+* so forwarding a packet never parses or looks up an address.
+* The table holds a bounded number of flows.  Once full, the flow that has gone longest without a packet is evicted;
+* if it comes back it starts over, with fresh counters and its fault generator seeded again.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: FlowTable.java
+*/
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// FlowTable class
+public class FlowTable {
+    public static final int DEFAULT_MAX_FLOWS = 4096;      // Flows a worker holds before evicting
+
+    public static final LongAdder FLOWS_EVICTED = Metrics.counter("rdt_network_flows_evicted_total", "Flows evicted from a full routing table");
+
+    private final int _maxFlows;
+
+    // Flows in order of their last packet, least recent first.  Guarded by the table, which is only contended while stats are printed
+    private final LinkedHashMap<Flow.Key, Flow> _flows;
+
+    /**
+     * Creates an empty table
+     * @param maxFlows - Flows held before the least recently used one is evicted
+     */
+    public FlowTable(int maxFlows) {
+        this._maxFlows = maxFlows;
+        this._flows = new LinkedHashMap<Flow.Key, Flow>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Flow.Key, Flow> eldest){
+                if (this.size() <= FlowTable.this._maxFlows){
+                    return false;
+                }
+                FLOWS_EVICTED.increment();
+                if (Log.isEnabled(Log.DEBUG)){
+                    Log.debug("Flow evicted: " + eldest.getValue());
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Finds a flow and marks it as the most recently used
+     * @param key - (src, dst) tuple of the flow, may be a reused probe key
+     * @return    - The flow, or null if it is not in the table
+     */
+    public synchronized Flow get(Flow.Key key){
+        return this._flows.get(key);
+    }
+
+    /**
+     * Marks a flow found without get(), such as the worker's last flow, as the most recently used
+     * @param flow - Flow in the table
+     */
+    public synchronized void touch(Flow flow){
+        this._flows.get(flow.key);
+    }
+
+    /**
+     * Adds a flow, evicting the least recently used one if the table is full
+     * @param flow - New flow, keyed by its immutable key
+     */
+    public synchronized void put(Flow flow){
+        this._flows.put(flow.key, flow);
+    }
+
+    /**
+     * @return - Number of flows held
+     */
+    public synchronized int size(){
+        return this._flows.size();
+    }
+
+    /**
+     * Appends the state of every flow, one per line
+     * @param stats  - Text the flows are appended to
+     * @param prefix - Text put before each flow
+     */
+    public synchronized void appendTo(StringBuilder stats, String prefix){
+        for (Flow flow : this._flows.values()){
+            stats.append(prefix).append(flow).append('\n');
+        }
+    }
+}
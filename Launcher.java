@@ -0,0 +1,244 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program runs a Network, a Receiver and a Sender together in one JVM and streams a file, or stdin, from the Sender to the Receiver.
+* With the in-memory transport (the default, see MemoryTransport) packets never reach the kernel, so the run measures the protocol
+* itself without system calls or the start-up of three JVMs; with --transport udp the roles talk over 127.0.0.1 as usual.
+* The Network's fault injection, bottleneck link and routing options are accepted as by the Network, the delayed ACK and session options
+* as by the Receiver, and the transfer options as by the Sender.  --workers sets the workers of both the Network and the Receiver.
+* As with the Sender and Receiver, a regular --file is mapped and sent without being read, and a --output file receives it into a mapping.
+*
+* Run "java Launcher <lostPercent> <delayedPercent> <errorPercent> [--transport memory|udp] [--port N] [--mode saw|gbn|sr] [--window N]
+*                    [--segment-size bytes] [--congestion newreno|cubic|fixed] [--initial-rto ms] [--min-rto ms] [--max-rto ms]
+*                    [--file path|-] [--output path] [--workers N] [--max-flows N] [--ack-every N] [--ack-delay ms] [--max-sessions N]
+*                    [--session-timeout s] [--max-message-size bytes] [network options] [--log-level off|error|info|debug] [--metrics-port port]"
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Launcher.java
+*/
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Launcher class
+public final class Launcher {
+    static final long STOP_TIMEOUT_MILLIS = 1000;           // How long a stopped role's thread is waited for
+
+    private Launcher() {
+
+    }
+
+    /**
+     * Starts the Network and Receiver on threads of their own, sends the input from the Sender on the calling thread, then stops both.
+     * Every role must have its socket created already, on the same transport
+     * @param network        - Network relaying between the Sender and Receiver
+     * @param receiver       - Receiver the input is delivered to
+     * @param sender         - Sender streaming the input
+     * @param lostPercent    - Percent likelihood of packet being lost, unless the Network has a loss model
+     * @param delayedPercent - Percent likelihood of packet being delayed
+     * @param errorPercent   - Percent likelihood of packet being error
+     * @param input          - Bytes to stream, or null to send the file
+     * @param file           - File to map and send, or null to stream the input
+     * @param mode           - Retransmission mode
+     * @param windowSize     - Window size
+     * @return               - Nanoseconds the transfer took; otherwise, -1 if it failed
+     */
+    public static long transfer(Network network, Receiver receiver, Sender sender, int lostPercent, int delayedPercent, int errorPercent,
+                                InputStream input, FileChannel file, WindowMode mode, int windowSize){
+        Thread networkThread = new Thread(() -> network.run(lostPercent, delayedPercent, errorPercent), "launcher-network");
+        networkThread.setDaemon(true);
+        networkThread.start();
+        Thread receiverThread = new Thread(receiver::run, "launcher-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+
+        long start = System.nanoTime();
+        int result = (file != null) ? sender.sendFile(file, mode, windowSize) : sender.sendStream(input, mode, windowSize);
+        long elapsed = System.nanoTime() - start;
+
+        // The Receiver closes its sessions, flushing their output, before its thread ends
+        receiver.stop();
+        network.stop();
+        try {
+            receiverThread.join(STOP_TIMEOUT_MILLIS);
+            networkThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return (result == 0) ? elapsed : -1;
+    }
+
+    /**
+     * @param in - Stream the caller does not own, such as System.in
+     * @return   - View of the stream whose close() leaves it open
+     */
+    private static InputStream nonClosing(InputStream in){
+        return new FilterInputStream(in) {
+            @Override
+            public void close(){
+
+            }
+        };
+    }
+
+    /**
+     * Parses the options, wires the three roles together and runs the transfer
+     * @param args - Loss, delay and error percents followed by options, see the file header
+     */
+    public static void main(String[] args) {
+        if (args.length < 3){
+            Log.error("Usuage: java Launcher <lostPercent> <delayedPercent> <errorPercent> [--transport memory|udp] [--port N] " +
+                      "[--mode saw|gbn|sr] [--window N] [--segment-size bytes] [--congestion newreno|cubic|fixed] [--initial-rto ms] [--min-rto ms] [--max-rto ms] " +
+                      "[--file path|-] [--output path] [--workers N] [--max-flows N] [--ack-every N] [--ack-delay ms] [--max-sessions N] [--session-timeout s] [--max-message-size bytes] " +
+                      "[network options, see Network] [--log-level off|error|info|debug] [--metrics-port port]");
+            return;
+        }
+
+        HashMap<String, String> options = new Utility().parseOptions(args, 3);
+        if (options == null || Log.configure(options) < 0 || Metrics.configure(options, "launcher") < 0){
+            return;
+        }
+
+        Transport.Kind transport = Transport.fromName(options.getOrDefault("transport", "memory"));
+        WindowMode mode = WindowMode.fromName(options.getOrDefault("mode", "sr"));
+        CongestionControl.Algorithm congestion = CongestionControl.fromName(options.getOrDefault("congestion", "newreno"));
+        int lostPercent, delayedPercent, errorPercent, port, windowSize, payloadSize;
+        int workers, maxFlows, ackEvery, ackDelay, maxSessions, sessionTimeout;
+        long seed, maxMessageLength;
+        RttEstimator rtt;
+        try {
+            lostPercent = Integer.parseInt(args[0]);
+            delayedPercent = Integer.parseInt(args[1]);
+            errorPercent = Integer.parseInt(args[2]);
+            port = Integer.parseInt(options.getOrDefault("port", "15000"));
+            windowSize = (mode == WindowMode.STOP_AND_WAIT) ? 1 : Integer.parseInt(options.getOrDefault("window", "32"));
+            payloadSize = Integer.parseInt(options.getOrDefault("segment-size", "1400"));
+            workers = Integer.parseInt(options.getOrDefault("workers", "1"));
+            maxFlows = Integer.parseInt(options.getOrDefault("max-flows", String.valueOf(FlowTable.DEFAULT_MAX_FLOWS)));
+            ackEvery = Integer.parseInt(options.getOrDefault("ack-every", "2"));
+            ackDelay = Integer.parseInt(options.getOrDefault("ack-delay", "20"));
+            maxSessions = Integer.parseInt(options.getOrDefault("max-sessions", "1024"));
+            sessionTimeout = Integer.parseInt(options.getOrDefault("session-timeout", "60"));
+            maxMessageLength = Long.parseLong(options.getOrDefault("max-message-size", String.valueOf(Receiver.DEFAULT_MAX_MESSAGE_LENGTH)));
+            seed = options.containsKey("seed") ? Long.parseLong(options.get("seed")) : ThreadLocalRandom.current().nextLong();
+            rtt = new RttEstimator(Long.parseLong(options.getOrDefault("initial-rto", String.valueOf(RttEstimator.DEFAULT_INITIAL_RTO))),
+                                   Long.parseLong(options.getOrDefault("min-rto", String.valueOf(RttEstimator.DEFAULT_MIN_RTO))),
+                                   Long.parseLong(options.getOrDefault("max-rto", String.valueOf(RttEstimator.DEFAULT_MAX_RTO))));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Percents, port, window size, segment size, worker, flow, ACK, session and message size settings, seed and RTO values must be integers");
+            return;
+        }
+        if (transport == null){
+            Log.error("Error: Transport must be memory or udp");
+            return;
+        }
+        if (mode == null || windowSize < 1 || windowSize > WindowMode.MAX_WINDOW_SIZE){
+            Log.error("Error: Mode must be saw, gbn or sr and window size between 1 and " + WindowMode.MAX_WINDOW_SIZE);
+            return;
+        }
+        if (payloadSize < 1 || payloadSize > NetworkHeader.MAX_PAYLOAD_SIZE){
+            Log.error("Error: Segment size must be between 1 and " + NetworkHeader.MAX_PAYLOAD_SIZE + " bytes");
+            return;
+        }
+        if (congestion == null){
+            Log.error("Error: Congestion control must be newreno, cubic or fixed");
+            return;
+        }
+        if (workers < 1 || maxFlows < 1){
+            Log.error("Error: Number of workers and max flows must be at least 1");
+            return;
+        }
+        if (ackEvery < 1 || ackDelay < 0){
+            Log.error("Error: ACK every must be at least 1 and ACK delay at least 0 ms");
+            return;
+        }
+        if (maxSessions < 1 || sessionTimeout < 1){
+            Log.error("Error: Max sessions and session timeout must be at least 1");
+            return;
+        }
+        if (maxMessageLength < 0){
+            Log.error("Error: Max message size must be at least 0 bytes");
+            return;
+        }
+
+        // The Network is configured as on its own command line
+        DelayModel delayModel = DelayModel.fromOptions(options);
+        LossModel lossModel = LossModel.fromOptions(options, lostPercent);
+        BottleneckLink dataLink = BottleneckLink.fromOptions(options, "data", seed);
+        BottleneckLink ackLink = BottleneckLink.fromOptions(options, "ack", seed);
+        if (delayModel == null || lossModel == null || dataLink == null || ackLink == null){
+            return;
+        }
+
+        Network network = new Network(port, delayModel, workers);
+        network.setTransport(transport);
+        network.setLinks(dataLink, ackLink);
+        network.setFaultModel(lossModel, seed);
+        network.setMaxFlows(maxFlows);
+
+        // The Receiver too is configured as on its own command line
+        Receiver receiver = new Receiver(port + 1, mode, windowSize);
+        receiver.setTransport(transport);
+        receiver.setDelayedAcks(ackEvery, ackDelay);
+        receiver.setWorkers(workers);
+        receiver.setSessionLimits(maxSessions, sessionTimeout);
+        receiver.setMaxMessageLength(maxMessageLength);
+
+        Sender sender = new Sender(port + 2, "127.0.0.1", String.valueOf(port + 1), "127.0.0.1", String.valueOf(port), rtt);
+        sender.setTransport(transport);
+        sender.setPayloadSize(payloadSize);
+        sender.setCongestionControl(congestion);
+
+        // Delivered bytes are written to --output, or discarded.  A regular file is mapped, anything else streamed.
+        // Closing the input when the transfer ends must not close System.in
+        String output = options.get("output");
+        String file = options.getOrDefault("file", "-");
+        boolean mapped = !file.equals("-") && Files.isRegularFile(Paths.get(file));
+        try (FileChannel outChannel = (output == null) ? null : Receiver.openOutputFile(output);
+             OutputStream out = (outChannel == null) ? OutputStream.nullOutputStream() : new BufferedOutputStream(Channels.newOutputStream(outChannel));
+             FileChannel inChannel = mapped ? FileChannel.open(Paths.get(file), StandardOpenOption.READ) : null;
+             InputStream in = mapped ? null : new BufferedInputStream(file.equals("-") ? nonClosing(System.in) : new FileInputStream(file))) {
+            receiver.setOutput(out, outChannel, (output == null) ? "discarded" : output);
+            if (network.createSocket() < 0){
+                return;
+            }
+            if (receiver.createSocket() < 0){
+                network.closeSocket();
+                return;
+            }
+            if (sender.resolveAddresses() < 0 || sender.createSocket() < 0){
+                receiver.closeSocket();
+                network.closeSocket();
+                return;
+            }
+
+            Log.info("Launching Network, Receiver and Sender over " + transport + (mapped ? ", sending mapped " : ", streaming ") + file);
+            long elapsed = transfer(network, receiver, sender, lostPercent, delayedPercent, errorPercent, in, inChannel, mode, windowSize);
+            if (elapsed < 0){
+                Log.error("Error: Transfer failed");
+            } else {
+                Log.info(sender.summary());
+                network.printStats();
+            }
+            sender.closeSocket();
+            receiver.closeSocket();
+            network.closeSocket();
+        } catch (IOException e) {
+            Log.error("Error: Unable to open " + file + " or " + output);
+        }
+    }
+}
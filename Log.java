@@ -0,0 +1,205 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the asynchronous, level-gated log shared by the Sender, Receiver and Network.
+* Log lines are placed in a lock-free ring buffer and written to the console by a background thread,
+* so threads forwarding packets never wait on console I/O.  A line is dropped (and counted) instead of blocking when the ring is full.
+* Lines below the configured level are never built: per-packet call sites check isEnabled before formatting a line,
+* so with logging turned down the hot path pays a single field read.
+* Errors go to stderr, everything else to stdout.  The ring is drained when the program exits.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Log.java
+*/
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Log class
+public final class Log {
+    // Levels, each includes the ones before it
+    public static final int OFF = 0;
+    public static final int ERROR = 1;
+    public static final int INFO = 2;
+    public static final int DEBUG = 3;
+
+    private static final int CAPACITY = 1 << 16;    // Lines the ring holds, a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_NANOS = 1000000L; // Writer sleeps this long when the ring is empty
+
+    private static int _level = INFO;   // Set by configure before any other thread starts
+
+    // Ring of pending lines.  Producers claim a sequence number from _tail, the writer thread consumes from _head.
+    // A slot's level is written before its line is published with lazySet and read after the line is seen
+    private static final AtomicReferenceArray<String> _lines = new AtomicReferenceArray<String>(CAPACITY);
+    private static final int[]      _levels = new int[CAPACITY];
+    private static final AtomicLong _tail = new AtomicLong();
+    private static volatile long    _head;
+    private static final AtomicLong _dropped = new AtomicLong();
+
+    // Console streams and the writer thread
+    private static Writer           _out = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+    private static final Writer     _err = new OutputStreamWriter(new FileOutputStream(FileDescriptor.err), StandardCharsets.UTF_8);
+    private static volatile boolean _running = true;
+    private static final Thread     _writer = new Thread(Log::drain, "log-writer");
+
+    static {
+        _writer.setDaemon(true);
+        _writer.start();
+
+        // Whatever is still in the ring is written before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::shutdown, "log-shutdown"));
+    }
+
+    private Log() {
+
+    }
+
+    /**
+     * Applies the log options shared by every program
+     * @param options - Parsed options; reads log-level (off, error, info or debug) and trace (file for the binary packet trace)
+     * @return        - 0, if the options are valid; otherwise, -1
+     */
+    public static int configure(HashMap<String, String> options){
+        switch (options.getOrDefault("log-level", "info").toLowerCase()) {
+            case "off":
+                _level = OFF;
+                break;
+            case "error":
+                _level = ERROR;
+                break;
+            case "info":
+                _level = INFO;
+                break;
+            case "debug":
+                _level = DEBUG;
+                break;
+            default:
+                error("Error: Log level must be off, error, info or debug");
+                return -1;
+        }
+
+        String trace = options.get("trace");
+        if (trace != null && PacketTrace.open(trace) < 0){
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Sends info and debug lines to stderr, for programs writing their own data to stdout
+     */
+    public static void redirectToStderr(){
+        _out = _err;
+    }
+
+    /**
+     * @param level - ERROR, INFO or DEBUG
+     * @return      - True if lines of the level are written.  Check before building a per-packet line
+     */
+    public static boolean isEnabled(int level){
+        return level <= _level;
+    }
+
+    public static void error(String line){
+        log(ERROR, line);
+    }
+
+    public static void info(String line){
+        log(INFO, line);
+    }
+
+    public static void debug(String line){
+        log(DEBUG, line);
+    }
+
+    /**
+     * Queues a line for the writer thread without waiting
+     * @param level - ERROR, INFO or DEBUG
+     * @param line  - Line to write
+     */
+    public static void log(int level, String line){
+        if (level > _level){
+            return;
+        }
+
+        // Claim the next slot unless the writer is a full ring behind
+        long seq;
+        do {
+            seq = _tail.get();
+            if (seq - _head >= CAPACITY){
+                _dropped.incrementAndGet();
+                return;
+            }
+        } while (!_tail.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & MASK;
+        _levels[slot] = level;
+        _lines.lazySet(slot, line);
+    }
+
+    /**
+     * @return - Number of lines dropped because the ring was full
+     */
+    public static long dropped(){
+        return _dropped.get();
+    }
+
+    /**
+     * Writer thread: writes lines in the order they were claimed and flushes whenever the ring runs empty
+     */
+    private static void drain(){
+        long head = _head;
+
+        try {
+            while (true){
+                int slot = (int) head & MASK;
+                String line = _lines.get(slot);
+
+                if (line == null){
+                    _out.flush();
+                    _err.flush();
+
+                    // Exit only once every claimed line was written
+                    if (!_running && head == _tail.get()){
+                        return;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+
+                Writer writer = (_levels[slot] == ERROR) ? _err : _out;
+                _lines.set(slot, null);
+                _head = ++head;
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            // Console is gone, nothing left to log to
+        }
+    }
+
+    /**
+     * Stops the writer thread once it has written everything queued so far
+     */
+    public static void shutdown(){
+        _running = false;
+        LockSupport.unpark(_writer);
+        try {
+            _writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PacketTrace.close();
+    }
+}
@@ -0,0 +1,196 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program decides which packets the Network loses.
+* Bernoulli loses every packet independently with the same probability, the loss percent the Network always used.
+* Gilbert-Elliott alternates between a good and a bad state, each with its own loss probability, to produce the bursts of loss
+* real links show: each packet moves from good to bad with probability p and from bad to good with probability r.
+* Trace-driven loss replays a file of 0s (delivered) and 1s (lost), one per packet, from its start for every flow and again once it runs out.
+* Every flow draws from its own generator and keeps its own state (see Flow), so the same seed loses the same packets of each flow
+* however flows are interleaved or spread over workers.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: LossModel.java
+*/
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+// LossModel class
+public class LossModel {
+    // Supported models
+    public enum Model { BERNOULLI, GILBERT, TRACE }
+
+    private final Model     _model;
+    private final double    _lossGood;      // Loss probability in the good state (Bernoulli: of every packet)
+    private final double    _lossBad;       // Loss probability in the bad state
+    private final double    _goodToBad;     // Probability p of moving from the good to the bad state before a packet
+    private final double    _badToGood;     // Probability r of moving from the bad to the good state before a packet
+    private final boolean[] _trace;         // Fate of each packet in the trace, true if lost
+
+    /**
+     * Creates a model that loses every packet independently
+     * @param lostPercent - Percent likelihood of a packet being lost
+     */
+    public LossModel(double lostPercent) {
+        this(Model.BERNOULLI, lostPercent / 100, 0, 0, 0, null);
+    }
+
+    /**
+     * Creates a loss model
+     * @param model     - Model deciding the losses
+     * @param lossGood  - Loss probability in the good state, or of every packet for Bernoulli
+     * @param lossBad   - Loss probability in the bad state
+     * @param goodToBad - Probability of moving from the good to the bad state
+     * @param badToGood - Probability of moving from the bad to the good state
+     * @param trace     - Fate of each packet for trace-driven loss, true if lost
+     */
+    public LossModel(Model model, double lossGood, double lossBad, double goodToBad, double badToGood, boolean[] trace) {
+        this._model = model;
+        this._lossGood = lossGood;
+        this._lossBad = lossBad;
+        this._goodToBad = goodToBad;
+        this._badToGood = badToGood;
+        this._trace = trace;
+    }
+
+    /**
+     * Creates the model from the Network's command line options
+     * @param options     - Parsed options; reads loss, gilbert-p, gilbert-r, gilbert-loss-good, gilbert-loss-bad and loss-trace
+     * @param lostPercent - Loss percent given on the command line, used by the Bernoulli model
+     * @return            - The loss model, or null if the options are invalid
+     */
+    public static LossModel fromOptions(HashMap<String, String> options, int lostPercent){
+        Model model;
+        try {
+            model = Model.valueOf(options.getOrDefault("loss", "bernoulli").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Log.error("Error: Loss model must be bernoulli, gilbert or trace");
+            return null;
+        }
+
+        switch (model) {
+            case GILBERT:
+                try {
+                    double p = Double.parseDouble(options.getOrDefault("gilbert-p", "1"));
+                    double r = Double.parseDouble(options.getOrDefault("gilbert-r", "25"));
+                    double lossGood = Double.parseDouble(options.getOrDefault("gilbert-loss-good", "0"));
+                    double lossBad = Double.parseDouble(options.getOrDefault("gilbert-loss-bad", "100"));
+                    if (!isPercent(p) || !isPercent(r) || !isPercent(lossGood) || !isPercent(lossBad) || p + r == 0){
+                        Log.error("Error: Gilbert-Elliott percents must be between 0 and 100 and p and r not both 0");
+                        return null;
+                    }
+                    return new LossModel(Model.GILBERT, lossGood / 100, lossBad / 100, p / 100, r / 100, null);
+                } catch (NumberFormatException e) {
+                    Log.error("Error: Gilbert-Elliott parameters must be numbers");
+                    return null;
+                }
+            case TRACE:
+                String path = options.get("loss-trace");
+                if (path == null){
+                    Log.error("Error: Trace-driven loss needs --loss-trace <file>");
+                    return null;
+                }
+                return fromTrace(path);
+            default:
+                return new LossModel(lostPercent);
+        }
+    }
+
+    private static boolean isPercent(double percent){
+        return percent >= 0 && percent <= 100;
+    }
+
+    /**
+     * Reads a loss trace: one 0 (delivered) or 1 (lost) per packet, anything else is ignored
+     * @param path - Trace file
+     * @return     - The loss model, or null if the trace cannot be read or is empty
+     */
+    private static LossModel fromTrace(String path){
+        byte[] text;
+        try {
+            text = Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            Log.error("Error: Unable to read loss trace " + path);
+            return null;
+        }
+
+        int count = 0;
+        boolean[] fates = new boolean[text.length];
+        for (byte b : text){
+            if (b == '0' || b == '1'){
+                fates[count++] = (b == '1');
+            }
+        }
+        if (count == 0){
+            Log.error("Error: Loss trace " + path + " holds no 0s or 1s");
+            return null;
+        }
+
+        boolean[] trace = new boolean[count];
+        System.arraycopy(fates, 0, trace, 0, count);
+        return new LossModel(Model.TRACE, 0, 0, 0, 0, trace);
+    }
+
+    /**
+     * Decides the fate of the next packet of a flow
+     * @param flow - Flow of the packet, holding its generator and loss state
+     * @return     - True if the packet is lost
+     */
+    public boolean lose(Flow flow){
+        switch (this._model) {
+            case GILBERT:
+                if (flow.lossBurst){
+                    flow.lossBurst = flow.random.nextDouble() >= this._badToGood;
+                } else {
+                    flow.lossBurst = flow.random.nextDouble() < this._goodToBad;
+                }
+                return flow.random.nextDouble() < (flow.lossBurst ? this._lossBad : this._lossGood);
+            case TRACE:
+                boolean lost = this._trace[flow.tracePosition];
+                flow.tracePosition = (flow.tracePosition + 1) % this._trace.length;
+                return lost;
+            default:
+                return this._lossGood > 0 && flow.random.nextDouble() < this._lossGood;
+        }
+    }
+
+    /**
+     * @return - Percent of packets lost in the long run
+     */
+    public double meanLossPercent(){
+        switch (this._model) {
+            case GILBERT:
+                double bad = this._goodToBad / (this._goodToBad + this._badToGood);
+                return 100 * (bad * this._lossBad + (1 - bad) * this._lossGood);
+            case TRACE:
+                int lost = 0;
+                for (boolean fate : this._trace){
+                    if (fate){
+                        lost++;
+                    }
+                }
+                return 100.0 * lost / this._trace.length;
+            default:
+                return 100 * this._lossGood;
+        }
+    }
+
+    @Override
+    public String toString(){
+        String mean = String.format("%.2f%% mean loss", this.meanLossPercent());
+        switch (this._model) {
+            case GILBERT:
+                return String.format("gilbert-elliott loss, p %.2f%% r %.2f%% loss good %.0f%% bad %.0f%%, ",
+                                     this._goodToBad * 100, this._badToGood * 100, this._lossGood * 100, this._lossBad * 100) + mean;
+            case TRACE:
+                return "trace-driven loss, " + this._trace.length + " packets, " + mean;
+            default:
+                return "bernoulli loss, " + mean;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program maps a region of a file into memory as a run of fixed size segments, the payloads of a message.
+* The Sender maps the file it sends read-only and copies each segment's payload straight from the mapping into its datagram,
+* so the file is never read into a buffer of its own.  The Receiver maps a region of its output file read-write, pre-sized to
+* the length the Sender announced, and copies each segment's payload straight to its offset, whatever order segments arrive in.
+* A mapping holds at most 2 GB, so a region is mapped in chunks of whole segments and no segment ever straddles two chunks.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: MappedFile.java
+*/
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// MappedFile class
+public class MappedFile {
+    private static final byte[] NO_PAYLOAD = new byte[0];  // Payload of the empty segment an empty region is sent as
+
+    private final long      _length;            // Bytes in the region
+    private final int       _segmentSize;       // Payload bytes of every segment but the last
+    private final int       _segmentsPerChunk;  // Segments held by each mapping
+    private final MappedByteBuffer[] _chunks;   // Mappings of the region, in order
+
+    /**
+     * Maps a region of a file.  Mapping a region read-write extends the file to cover it
+     * @param channel     - File to map, open for reading, and for writing too with READ_WRITE
+     * @param mode        - FileChannel.MapMode.READ_ONLY to send the region, READ_WRITE to receive into it
+     * @param position    - Offset of the region in the file
+     * @param length      - Bytes in the region
+     * @param segmentSize - Payload bytes of each segment
+     * @throws IOException - If the file cannot be mapped
+     */
+    public MappedFile(FileChannel channel, FileChannel.MapMode mode, long position, long length, int segmentSize) throws IOException {
+        this._length = length;
+        this._segmentSize = segmentSize;
+        this._segmentsPerChunk = Integer.MAX_VALUE / segmentSize;
+
+        long chunkSize = (long) this._segmentsPerChunk * segmentSize;
+        this._chunks = new MappedByteBuffer[(int) ((length + chunkSize - 1) / chunkSize)];
+        for (int i = 0; i < this._chunks.length; i++){
+            long start = i * chunkSize;
+            this._chunks[i] = channel.map(mode, position + start, Math.min(chunkSize, length - start));
+        }
+    }
+
+    /**
+     * @return - Bytes in the region
+     */
+    public long length(){
+        return this._length;
+    }
+
+    /**
+     * @return - Number of segments the region is sent in.  An empty region is sent as a single empty segment
+     */
+    public long segmentCount(){
+        return Math.max(1, (this._length + this._segmentSize - 1) / this._segmentSize);
+    }
+
+    /**
+     * @param index - Index of a segment
+     * @return      - Payload bytes of the segment, 0 if it is past the end of the region
+     */
+    public int segmentLength(long index){
+        long offset = index * this._segmentSize;
+        if (index < 0 || offset >= this._length){
+            return 0;
+        }
+        return (int) Math.min(this._segmentSize, this._length - offset);
+    }
+
+    /**
+     * Copies a segment of the region into the payload of a packet and sets its length field
+     * @param index  - Index of the segment
+     * @param header - Network header of the packet, its buffer large enough for a segment
+     * @return       - Payload bytes copied
+     */
+    public int read(long index, NetworkHeader header){
+        int length = this.segmentLength(index);
+        if (length == 0){
+            header.putPayload(NO_PAYLOAD, 0, 0);
+            return 0;
+        }
+        header.putPayload(this._chunks[(int) (index / this._segmentsPerChunk)],
+                          (int) (index % this._segmentsPerChunk) * this._segmentSize, length);
+        return length;
+    }
+
+    /**
+     * Copies the payload of a packet to the offset of its segment in the region
+     * @param index  - Index of the segment
+     * @param header - Network header viewing the packet
+     * @return       - Payload bytes copied; otherwise, -1 if its length is not that of the segment's place in the region
+     */
+    public int write(long index, NetworkHeader header){
+        int length = header.length();
+        if (length != this.segmentLength(index)){
+            return -1;
+        }
+        if (length == 0){
+            return 0;
+        }
+        return header.getPayload(this._chunks[(int) (index / this._segmentsPerChunk)],
+                                 (int) (index % this._segmentsPerChunk) * this._segmentSize);
+    }
+}
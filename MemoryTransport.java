@@ -0,0 +1,306 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program carries datagrams between the Sender, Receiver and Network of one JVM without a socket.
+* Every transport is bound to a port in a registry shared by the JVM and owns an inbox, a lock-free ring of INBOX_CAPACITY slots.
+* Sending copies the datagram into the next free slot of the inbox of the transport bound to the destination port, and receiving
+* copies it from the slot into the caller's buffer.  A slot keeps its byte array for the next datagram, so once every slot has held
+* a datagram as long as the ones being sent, datagrams pass without allocating.  Any destination address is taken to be this JVM,
+* so the 127.0.0.1 the roles are configured with just works.  The one thread receiving from a transport parks while its inbox is
+* empty and is unparked by the next send.
+* Like UDP, nothing is delivered to a port no transport is bound to, and a datagram is dropped when the inbox is full.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: MemoryTransport.java
+*/
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// MemoryTransport class
+public class MemoryTransport implements Transport {
+    public static final int INBOX_CAPACITY = 4096;         // Datagrams waiting in an inbox before new ones are dropped, like a socket buffer, a power of two
+    private static final int MASK = INBOX_CAPACITY - 1;
+    private static final int FIRST_EPHEMERAL_PORT = 49152;
+
+    // Transports of this JVM by port
+    private static final ConcurrentHashMap<Integer, MemoryTransport> PORTS = new ConcurrentHashMap<Integer, MemoryTransport>();
+    private static final AtomicInteger NEXT_EPHEMERAL_PORT = new AtomicInteger(FIRST_EPHEMERAL_PORT);
+
+    public static final LongAdder DATAGRAMS_DROPPED = Metrics.counter("rdt_transport_memory_dropped_total", "Datagrams dropped because the destination's inbox was full");
+
+    private final int               _port;
+    private final InetSocketAddress _address;       // Source address of the datagrams sent from this transport
+
+    // Inbox ring.  A slot is free for the sender claiming ticket t while its sequence is t, and holds a datagram for the receiver
+    // taking ticket t while its sequence is t + 1.  Slot arrays are only touched by the sender that claimed the slot, then by the receiver
+    private final byte[][]            _data = new byte[INBOX_CAPACITY][];
+    private final int[]               _lengths = new int[INBOX_CAPACITY];
+    private final InetSocketAddress[] _sources = new InetSocketAddress[INBOX_CAPACITY];
+    private final AtomicLongArray     _sequences = new AtomicLongArray(INBOX_CAPACITY);
+    private final AtomicLong          _tail = new AtomicLong();     // Ticket of the next datagram sent to this transport
+    private long                      _head;                        // Ticket of the next datagram received, only used by the receiving thread
+    private volatile Thread         _waiter;        // Thread parked until a datagram arrives, null while none is
+    private volatile boolean        _woken;         // Set by wakeup() until the next await() returns
+    private volatile boolean        _closed;
+    private volatile int            _peerPort;      // Port of the connected peer, 0 if not connected
+    private int                     _timeoutMillis;
+
+    /**
+     * Binds a transport to a port of this JVM
+     * @param port - Port to bind to, 0 for any free port
+     * @throws BindException - If another transport is bound to the port
+     */
+    public MemoryTransport(int port) throws BindException {
+        if (port == 0){
+            do {
+                port = NEXT_EPHEMERAL_PORT.getAndIncrement();
+            } while (PORTS.putIfAbsent(port, this) != null);
+        } else if (PORTS.putIfAbsent(port, this) != null){
+            throw new BindException("Memory port " + port + " already in use");
+        }
+        this._port = port;
+        this._address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        for (int i = 0; i < INBOX_CAPACITY; i++){
+            this._sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Copies a datagram into a free slot of the inbox of the transport bound to a port and wakes its receiving thread
+     * @param port   - Destination port
+     * @param data   - Array holding the datagram
+     * @param offset - Offset of the datagram in data
+     * @param length - Bytes in the datagram
+     * @param buffer - Buffer holding the datagram from its position, used instead of data when not null
+     * @return       - True if the datagram was queued, false if the destination's inbox was full
+     */
+    private boolean deliver(int port, byte[] data, int offset, int length, ByteBuffer buffer){
+        MemoryTransport destination = PORTS.get(port);
+        if (destination == null || destination._closed){
+            // Nobody listening, the datagram is lost like an unanswered UDP one
+            return true;
+        }
+
+        // Claim the slot of the next ticket, unless the receiver has not emptied it yet
+        long ticket = destination._tail.get();
+        int slot;
+        while (true){
+            slot = (int) (ticket & MASK);
+            long sequence = destination._sequences.get(slot);
+            if (sequence == ticket){
+                if (destination._tail.compareAndSet(ticket, ticket + 1)){
+                    break;
+                }
+                ticket = destination._tail.get();
+            } else if (sequence < ticket){
+                DATAGRAMS_DROPPED.increment();
+                return false;
+            } else {
+                // Another sender claimed this ticket first
+                ticket = destination._tail.get();
+            }
+        }
+
+        byte[] copy = destination._data[slot];
+        if (copy == null || copy.length < length){
+            copy = new byte[length];
+            destination._data[slot] = copy;
+        }
+        if (buffer != null){
+            buffer.get(copy, 0, length);
+        } else {
+            System.arraycopy(data, offset, copy, 0, length);
+        }
+        destination._lengths[slot] = length;
+        destination._sources[slot] = this._address;
+        destination._sequences.set(slot, ticket + 1);
+
+        Thread waiter = destination._waiter;
+        if (waiter != null){
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    /**
+     * Finds the slot of the next datagram in the inbox, emptying the slots of those not from the connected peer.
+     * The slot holds the datagram until release() is called
+     * @return - Slot, or -1 if the inbox is empty
+     */
+    private int poll(){
+        while (true){
+            int slot = (int) (this._head & MASK);
+            if (this._sequences.get(slot) != this._head + 1){
+                return -1;
+            }
+            if (this._peerPort == 0 || this._sources[slot].getPort() == this._peerPort){
+                return slot;
+            }
+            this.release(slot);
+        }
+    }
+
+    /**
+     * Empties the slot of the datagram poll() returned, so a sender may fill it again
+     * @param slot - Slot returned by poll()
+     */
+    private void release(int slot){
+        this._sequences.set(slot, this._head + INBOX_CAPACITY);
+        this._head++;
+    }
+
+    /**
+     * @return - True if no datagram waits in the inbox, or the next one is still being copied in
+     */
+    private boolean isEmpty(){
+        return this._sequences.get((int) (this._head & MASK)) != this._head + 1;
+    }
+
+    /**
+     * Parks the calling thread until the inbox holds a datagram, wakeup() is called or the deadline passes
+     * @param deadline - System.nanoTime() to give up at, or 0 to wait forever
+     * @return         - True if a datagram may be waiting or the wait was woken; otherwise, false if the deadline passed
+     * @throws SocketException - If the transport is closed
+     */
+    private boolean park(long deadline) throws SocketException {
+        // Publish the waiter before checking the inbox again, so a datagram queued in between unparks it
+        this._waiter = Thread.currentThread();
+        try {
+            while (this.isEmpty() && !this._woken){
+                if (this._closed){
+                    throw new SocketException("Memory transport closed");
+                }
+                if (deadline == 0){
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0){
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            return true;
+        } finally {
+            this._waiter = null;
+        }
+    }
+
+    @Override
+    public int localPort(){
+        return this._port;
+    }
+
+    @Override
+    public void connect(InetSocketAddress peer){
+        this._peerPort = peer.getPort();
+    }
+
+    @Override
+    public void setTimeout(int timeoutMillis) throws SocketException {
+        if (this._closed){
+            throw new SocketException("Memory transport closed");
+        }
+        this._timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        if (this._closed){
+            throw new SocketException("Memory transport closed");
+        }
+        int port = (packet.getPort() >= 0) ? packet.getPort() : this._peerPort;
+        this.deliver(port, packet.getData(), packet.getOffset(), packet.getLength(), null);
+    }
+
+    @Override
+    public void receive(DatagramPacket packet) throws IOException {
+        long deadline = (this._timeoutMillis > 0) ? System.nanoTime() + this._timeoutMillis * 1000000L : 0;
+        int slot;
+        while ((slot = this.poll()) < 0){
+            if (this._closed){
+                throw new SocketException("Memory transport closed");
+            }
+            if (!this.park(deadline)){
+                throw new SocketTimeoutException("Receive timed out");
+            }
+            this._woken = false;
+        }
+
+        // Like UDP, the part of a datagram too long for the packet is discarded
+        int length = Math.min(this._lengths[slot], packet.getData().length - packet.getOffset());
+        System.arraycopy(this._data[slot], 0, packet.getData(), packet.getOffset(), length);
+        packet.setLength(length);
+        packet.setSocketAddress(this._sources[slot]);
+        this.release(slot);
+    }
+
+    @Override
+    public int send(ByteBuffer packet, InetSocketAddress destination) throws IOException {
+        if (this._closed){
+            throw new SocketException("Memory transport closed");
+        }
+        int length = packet.remaining();
+        if (!this.deliver(destination.getPort(), null, 0, length, packet)){
+            return 0;
+        }
+        return length;
+    }
+
+    @Override
+    public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+        if (this._closed){
+            throw new SocketException("Memory transport closed");
+        }
+        int slot = this.poll();
+        if (slot < 0){
+            return null;
+        }
+        InetSocketAddress source = this._sources[slot];
+        buffer.put(this._data[slot], 0, Math.min(this._lengths[slot], buffer.remaining()));
+        this.release(slot);
+        return source;
+    }
+
+    @Override
+    public void await() throws IOException {
+        this.park(0);
+        this._woken = false;
+    }
+
+    @Override
+    public void wakeup(){
+        this._woken = true;
+        Thread waiter = this._waiter;
+        if (waiter != null){
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    @Override
+    public void close(){
+        this._closed = true;
+        PORTS.remove(this._port, this);
+        this.wakeup();
+    }
+
+    @Override
+    public String toString(){
+        return "memory:" + this._port;
+    }
+}
@@ -0,0 +1,407 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the metrics registry shared by the Sender, Receiver and Network.
+* Counters are LongAdders, so many threads can count without contending on one memory location.
+* Histograms count observations in fixed, exponentially growing latency buckets, and gauges are read from the program on demand.
+* Gauges read the state of one Sender, Receiver or Network, so each instance registers its own series, labelled id="<role>:<port>",
+* and removes them when it closes; the registry never keeps a closed instance reachable.
+* Every metric is published through JMX (object name rdt:type=Metrics,program=<program>) and, with --metrics-port,
+* in the Prometheus text format on http://127.0.0.1:<port>/metrics so load tests can scrape it.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Metrics.java
+*/
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+
+// Metrics class
+public final class Metrics {
+    // Every registered metric by name, in registration order.  Values are LongAdder, Histogram or GaugeFamily
+    private static final LinkedHashMap<String, Object> _metrics = new LinkedHashMap<String, Object>();
+    private static final HashMap<String, String> _help = new HashMap<String, String>();
+
+    private static HttpServer _server;
+
+    private Metrics() {
+
+    }
+
+    /**
+     * Registers a counter, or returns the one already registered under the name
+     * @param name - Prometheus name, ending in _total
+     * @param help - One line description
+     * @return     - Counter to increment
+     */
+    public static synchronized LongAdder counter(String name, String help){
+        Object metric = _metrics.get(name);
+        if (metric == null){
+            metric = new LongAdder();
+            register(name, help, metric);
+        }
+        return (LongAdder) metric;
+    }
+
+    /**
+     * Registers a latency histogram, or returns the one already registered under the name
+     * @param name - Prometheus name, ending in _seconds
+     * @param help - One line description
+     * @return     - Histogram to record observations in
+     */
+    public static synchronized Histogram histogram(String name, String help){
+        Object metric = _metrics.get(name);
+        if (metric == null){
+            metric = new Histogram();
+            register(name, help, metric);
+        }
+        return (Histogram) metric;
+    }
+
+    /**
+     * @param role - Kind of instance, such as sender
+     * @param port - Port the instance is bound to
+     * @return     - Prometheus labels telling the gauges of one instance apart from those of the others
+     */
+    public static String instance(String role, int port){
+        return "id=\"" + role + ":" + port + "\"";
+    }
+
+    /**
+     * Registers one instance's series of a gauge, whose value is read whenever the metrics are published.  Registering the same
+     * labels again replaces the series
+     * @param name   - Prometheus name
+     * @param help   - One line description
+     * @param labels - Labels of the instance, see instance()
+     * @param value  - Reads the current value
+     */
+    public static synchronized void gauge(String name, String help, String labels, DoubleSupplier value){
+        Object metric = _metrics.get(name);
+        if (metric == null){
+            metric = new GaugeFamily();
+            register(name, help, metric);
+        }
+        ((GaugeFamily) metric).series.put(labels, value);
+    }
+
+    /**
+     * Removes every gauge series of an instance that is closing, and the gauges left without a series
+     * @param labels - Labels the instance registered its gauges with
+     */
+    public static synchronized void removeGauges(String labels){
+        Iterator<Map.Entry<String, Object>> entries = _metrics.entrySet().iterator();
+        while (entries.hasNext()){
+            Map.Entry<String, Object> entry = entries.next();
+            if (entry.getValue() instanceof GaugeFamily){
+                GaugeFamily family = (GaugeFamily) entry.getValue();
+                family.series.remove(labels);
+                if (family.series.isEmpty()){
+                    _help.remove(entry.getKey());
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    private static void register(String name, String help, Object metric){
+        _metrics.put(name, metric);
+        _help.put(name, help);
+    }
+
+    /**
+     * Applies the metrics options shared by every program and publishes the metrics through JMX
+     * @param options - Parsed options; reads metrics-port
+     * @param program - Name of the program, used in the JMX object name
+     * @return        - 0, if the metrics are published; otherwise, -1
+     */
+    public static int configure(HashMap<String, String> options, String program){
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("rdt:type=Metrics,program=" + program));
+        } catch (JMException e) {
+            Log.error("Error: Unable to register the metrics with JMX");
+            return -1;
+        }
+
+        String port = options.get("metrics-port");
+        if (port == null){
+            return 0;
+        }
+        try {
+            return startHttpServer(Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Metrics port must be an integer");
+            return -1;
+        }
+    }
+
+    /**
+     * Serves the metrics in the Prometheus text format on http://127.0.0.1:port/metrics
+     * @param port - Local port to listen on
+     * @return     - 0, if the server started; otherwise, -1
+     */
+    public static int startHttpServer(int port){
+        try {
+            _server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            Log.error("Error: Unable to serve metrics on port " + port);
+            return -1;
+        }
+
+        _server.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        // The server's dispatcher thread inherits the daemon flag of the thread starting it,
+        // so start it from a daemon thread and the server never keeps a finished program alive
+        Thread starter = new Thread(_server::start, "metrics-http");
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Log.info("Serving metrics on http://127.0.0.1:" + port + "/metrics");
+        return 0;
+    }
+
+    /**
+     * @return - Every metric in the Prometheus text exposition format
+     */
+    public static synchronized String scrape(){
+        StringBuilder text = new StringBuilder();
+
+        for (Map.Entry<String, Object> entry : _metrics.entrySet()){
+            String name = entry.getKey();
+            Object metric = entry.getValue();
+            text.append("# HELP ").append(name).append(' ').append(_help.get(name)).append('\n');
+
+            if (metric instanceof LongAdder){
+                text.append("# TYPE ").append(name).append(" counter\n");
+                text.append(name).append(' ').append(((LongAdder) metric).sum()).append('\n');
+            } else if (metric instanceof Histogram){
+                text.append("# TYPE ").append(name).append(" histogram\n");
+                ((Histogram) metric).appendTo(name, text);
+            } else {
+                text.append("# TYPE ").append(name).append(" gauge\n");
+                for (Map.Entry<String, DoubleSupplier> series : ((GaugeFamily) metric).series.entrySet()){
+                    text.append(name).append('{').append(series.getKey()).append("} ").append(series.getValue().getAsDouble()).append('\n');
+                }
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Series of one gauge, by the labels of the instance each reads
+     */
+    private static final class GaugeFamily {
+        final LinkedHashMap<String, DoubleSupplier> series = new LinkedHashMap<String, DoubleSupplier>();
+    }
+
+    /**
+     * Latency histogram with fixed buckets from 50 microseconds to about 13 seconds, each twice the one before.
+     * Recording is a short scan and two LongAdder increments, so any thread can record without locking
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 19;
+        private static final long FIRST_BOUND_NANOS = 50000L;
+
+        private final long[]        _boundsNanos = new long[BUCKETS];  // Upper bound of each bucket
+        private final LongAdder[]   _counts = new LongAdder[BUCKETS + 1]; // Last bucket counts everything larger
+        private final LongAdder     _count = new LongAdder();
+        private final DoubleAdder   _sumSeconds = new DoubleAdder();
+
+        public Histogram() {
+            long bound = FIRST_BOUND_NANOS;
+            for (int i = 0; i < BUCKETS; i++){
+                this._boundsNanos[i] = bound;
+                bound *= 2;
+            }
+            for (int i = 0; i <= BUCKETS; i++){
+                this._counts[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Records one observation
+         * @param nanos - Observed latency in nanoseconds
+         */
+        public void record(long nanos){
+            int bucket = 0;
+            while (bucket < BUCKETS && nanos > this._boundsNanos[bucket]){
+                bucket++;
+            }
+            this._counts[bucket].increment();
+            this._count.increment();
+            this._sumSeconds.add(nanos / 1e9);
+        }
+
+        public long count(){
+            return this._count.sum();
+        }
+
+        public double sumSeconds(){
+            return this._sumSeconds.sum();
+        }
+
+        /**
+         * Estimates a quantile from the buckets
+         * @param q - Quantile between 0 and 1
+         * @return  - Upper bound, in seconds, of the bucket holding the quantile, or 0 without observations
+         */
+        public double quantileSeconds(double q){
+            long total = this.count();
+            if (total == 0){
+                return 0;
+            }
+
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++){
+                seen += this._counts[i].sum();
+                if (seen >= rank){
+                    return this._boundsNanos[i] / 1e9;
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        private void appendTo(String name, StringBuilder text){
+            long cumulative = 0;
+            for (int i = 0; i < BUCKETS; i++){
+                cumulative += this._counts[i].sum();
+                text.append(name).append("_bucket{le=\"").append(this._boundsNanos[i] / 1e9).append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += this._counts[BUCKETS].sum();
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            text.append(name).append("_sum ").append(this.sumSeconds()).append('\n');
+            text.append(name).append("_count ").append(this.count()).append('\n');
+        }
+
+        @Override
+        public String toString(){
+            return String.format("count: %d p50: %.3f ms p99: %.3f ms", this.count(),
+                                 this.quantileSeconds(0.5) * 1000, this.quantileSeconds(0.99) * 1000);
+        }
+    }
+
+    /**
+     * Read-only JMX view of the registry.  Counters are attributes of their own name, gauges one per series as <name>{<labels>},
+     * histograms show up as <name>_count, <name>_sum, <name>_p50 and <name>_p99
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute){
+            synchronized (Metrics.class) {
+                Object metric = _metrics.get(attribute);
+                if (metric instanceof LongAdder){
+                    return ((LongAdder) metric).sum();
+                }
+                int brace = attribute.indexOf('{');
+                if (brace > 0 && attribute.endsWith("}") && _metrics.get(attribute.substring(0, brace)) instanceof GaugeFamily){
+                    GaugeFamily family = (GaugeFamily) _metrics.get(attribute.substring(0, brace));
+                    DoubleSupplier series = family.series.get(attribute.substring(brace + 1, attribute.length() - 1));
+                    return (series != null) ? series.getAsDouble() : null;
+                }
+
+                int split = attribute.lastIndexOf('_');
+                if (split > 0 && _metrics.get(attribute.substring(0, split)) instanceof Histogram){
+                    Histogram histogram = (Histogram) _metrics.get(attribute.substring(0, split));
+                    switch (attribute.substring(split + 1)) {
+                        case "count":
+                            return (double) histogram.count();
+                        case "sum":
+                            return histogram.sumSeconds();
+                        case "p50":
+                            return histogram.quantileSeconds(0.5);
+                        case "p99":
+                            return histogram.quantileSeconds(0.99);
+                        default:
+                            break;
+                    }
+                }
+                return null;
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes){
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes){
+                list.add(new Attribute(attribute, this.getAttribute(attribute)));
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute){
+            throw new UnsupportedOperationException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes){
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature){
+            throw new UnsupportedOperationException("Metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo(){
+            ArrayList<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+
+            synchronized (Metrics.class) {
+                for (Map.Entry<String, Object> entry : _metrics.entrySet()){
+                    String name = entry.getKey();
+                    Object metric = entry.getValue();
+                    if (metric instanceof Histogram){
+                        for (String part : new String[] { "count", "sum", "p50", "p99" }){
+                            attributes.add(new MBeanAttributeInfo(name + "_" + part, "java.lang.Double", _help.get(name), true, false, false));
+                        }
+                    } else if (metric instanceof GaugeFamily){
+                        for (String labels : ((GaugeFamily) metric).series.keySet()){
+                            attributes.add(new MBeanAttributeInfo(name + "{" + labels + "}", "java.lang.Double", _help.get(name), true, false, false));
+                        }
+                    } else {
+                        attributes.add(new MBeanAttributeInfo(name, "java.lang.Long", _help.get(name), true, false, false));
+                    }
+                }
+            }
+
+            return new MBeanInfo(Metrics.class.getName(), "RDT protocol metrics",
+                                 attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
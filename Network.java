@@ -3,6 +3,20 @@
 * The nework listens on a specified port for incoming messages from sender or receiver.
 * The program performs a simulation of various network conditions like packet loss, delay, and corruption, and forwards responses back sender/receiver.
 * The program also keeps track and prints statistical data associated with the number of lost, delayed, and corrupt packets.
+* Packets are relayed by a non-blocking DatagramChannel driven by a Selector, so many sender/receiver flows can share one Network at once.
+* In one JVM with the Sender and Receiver, the in-memory transport relays them without a socket instead (see Transport and Launcher).
+* Every flow, identified by the (src, dst) tuple of its network header, keeps its own forwarding address and fault counters.
+* Each worker's flows make up its routing table (see FlowTable), which holds --max-flows flows and evicts the least recently used.
+* With several workers, the receiving thread hashes each flow to one NetworkWorker thread, which keeps the packets of a flow in order
+* while different flows are forwarded in parallel on different cores.
+* Packets are received into direct buffers from a shared pool and handed to the workers without copying; the buffer goes back to the pool once the packet is sent or dropped.
+* Routing fields are read in place and corruption flips one bit in place, so a packet that is neither delayed nor queued on a link costs
+* a receive and a send of the same buffer (see Benchmark --benchmark relay).  Stats are printed every 5 packets, but at most once a second.
+* A bottleneck link can be configured for each direction (--bandwidth kbit/s, --burst bytes, --queue packets, --aqm droptail|red,
+* --propagation ms; see BottleneckLink), so throughput experiments run against a finite link rate and queue instead of loopback speed.
+* Faults are drawn from a generator per flow seeded from --seed, so a run can be repeated exactly, and losses follow a pluggable model
+* (--loss bernoulli|gilbert|trace; see LossModel) so bursts of loss can be injected as well as independent ones.
+* The packet counts, injected delays, buffer use and throughput are published as metrics (see Metrics).
 
 * @authors:   Ben Yanick and Gina  Wittman
 * @date:      08/08/2023
@@ -12,234 +26,334 @@
 */
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
 import java.util.HashMap;
-import java.util.Scanner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
 
 //Network class.
 public class Network {
     
-    private DatagramSocket  _socket;            // Private instance variable to hold the DatagramSocket for UDP communication.
+    private Transport       _channel;           // Transport packets are relayed on, a non-blocking UDP channel unless configured
+    private Transport.Kind  _transportKind = Transport.Kind.UDP;
     private int             _port;              // Private variable for port number on which the network simulator will listen for incoming traffic.
-    private boolean         _continueService;   // Private boolean flag to control the service continuation. 
+    private volatile boolean _continueService;  // Private boolean flag to control the service continuation. 
+
+    private static final int BUFFER_SIZE = NetworkHeader.MAX_PACKET_SIZE; // Large enough for any segment size the Sender and Receiver agree on
+    private static final int POOL_SIZE = 1024;  // Packets the Network can hold at once, queued, delayed or being forwarded
+    private static final int STATS_EVERY = 5;   // Packets between printed stats
+    private static final long STATS_INTERVAL_NANOS = 1000000000L;  // Least time between printed stats, so bulk transfers are not slowed by logging
+
+    // Delayed packets wait on a single timer thread instead of one sleeping thread each
+    private ScheduledExecutorService _delayQueue;
+    private DelayModel      _delayModel;        // Distribution the delay of each delayed packet is drawn from
+
+    // Bottleneck links crossed by segments and by ACKs, or null for none
+    private BottleneckLink  _dataLink;
+    private BottleneckLink  _ackLink;
+
+    // Loss model, or null for independent losses of the lost percent, and the seed every flow's faults are drawn from
+    private LossModel       _lossModel;
+    private long            _seed = ThreadLocalRandom.current().nextLong();
+
+    // Forwarding workers.  A single worker runs on the receiving thread itself
+    private int             _workerCount;
+    private int             _maxFlows = FlowTable.DEFAULT_MAX_FLOWS;     // Flows each worker routes before evicting the least recently used
+    private NetworkWorker[] _workers;
+    private Thread[]        _workerThreads;
+
+    // Packet buffers.  Packets that arrive while every buffer is in use are read into the spare buffer and dropped
+    private BufferPool      _pool = new BufferPool(BUFFER_SIZE, POOL_SIZE, true);
+    private ByteBuffer      _spareBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private static final LongAdder PACKETS_POOL_DROPPED = Metrics.counter("rdt_network_packets_pool_dropped_total", "Packets dropped because every buffer was in use");
+    private long            _startedAt;         // System.nanoTime() when the Network started forwarding
+
+    // Network header used to read the flow of each packet in place
+    private NetworkHeader   _header = new NetworkHeader();
+    private Flow.Key        _probeKey = new Flow.Key();
+
+    // Constructor: Initializes the Network class with the specified port, the default fixed 4 second delay and one worker
+    public Network(int port) {
+        this(port, new DelayModel(DelayModel.Distribution.FIXED, DelayModel.DEFAULT_MEAN, 0, DelayModel.DEFAULT_SHAPE), 1);
+    }
 
-    private static final int BUFFER_SIZE = 54; // Constant for buffer size to store received data
+    // Constructor: Initializes the Network class with the specified port, delay model and number of forwarding workers
+    public Network(int port, DelayModel delayModel, int workerCount) {
+        this._port = port;
+        this._delayModel = delayModel;
+        this._workerCount = workerCount;
+    }
 
-    // Utility instance for parsing network headers
-    private Utility utility = new Utility();
+    // Sets how many flows each worker keeps in its routing table
+    public void setMaxFlows(int maxFlows) {
+        this._maxFlows = maxFlows;
+    }
 
-    // Constructor: Initializes the Network class with the specified port
-    public Network(int port) {
-        this._port = port;
+    // Sets the bottleneck links packets cross in each direction.  Links that neither limit the rate nor delay packets are left out
+    public void setLinks(BottleneckLink dataLink, BottleneckLink ackLink) {
+        this._dataLink = (dataLink != null && dataLink.enabled()) ? dataLink : null;
+        this._ackLink = (ackLink != null && ackLink.enabled()) ? ackLink : null;
+    }
+
+    // Sets the model deciding which packets are lost and the seed of every fault.  The same seed repeats the same faults of each flow
+    public void setFaultModel(LossModel lossModel, long seed) {
+        this._lossModel = lossModel;
+        this._seed = seed;
     }
 
-    // Creates a new DatagramSocket and binds it to the specified port
+    // Sets the transport createSocket() opens, UDP or the in-memory transport of this JVM
+    public void setTransport(Transport.Kind kind) {
+        this._transportKind = kind;
+    }
+
+    // Opens the transport bound to the specified port
     // Returns 0 on success, -1 on failure
     public int createSocket() {
         try {
-            this._socket = new DatagramSocket(this._port);
-        } catch (SocketException e){
-            System.err.println("Unable to create and bind socket");
+            this._channel = Transport.open(this._transportKind, this._port);
+        } catch (IOException e){
+            Log.error("Unable to create and bind socket");
             return -1;
         }
 
+        // Daemon timer thread so pending delayed packets never keep the Network alive
+        this._delayQueue = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "network-delay-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+
         return 0;
     }
 
     public int closeSocket() {
-        this._socket.close();
+        Metrics.removeGauges(Metrics.instance("network", this._port));
+        if (this._workerThreads != null){
+            for (Thread thread : this._workerThreads){
+                thread.interrupt();
+            }
+        }
+        this._delayQueue.shutdownNow();
+        try {
+            this._channel.close();
+        } catch (IOException e){
+            Log.error("Error: Unable to close socket");
+            return -1;
+        }
         return 0;
     }
 
+    // Stops the forwarding loop from another thread
+    public void stop() {
+        this._continueService = false;
+        this._channel.wakeup();
+    }
+
 
     /**
-     * Receives requests by calling upon underlying UDP protocol
-     * @return - datagram containing the client request
+     * Receives a request without blocking
+     * @param buffer - Cleared buffer to receive the packet into
+     * @return       - Address the packet came from, or null if no packet is waiting
      */
-    public DatagramPacket receiveRequest() {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        DatagramPacket packetToReceive = new DatagramPacket(buffer, BUFFER_SIZE);
-
+    public InetSocketAddress receiveRequest(ByteBuffer buffer) {
         try {
             // Call to underlying UDP receive method
-            this._socket.receive(packetToReceive);
-            System.out.println(packetToReceive);
+            return this._channel.receive(buffer);
+        } catch (ClosedChannelException | ClosedSelectorException e){
+            // Closed by closeSocket() from another thread, the forwarding loop ends at its next wait
+            return null;
         } catch (IOException e){
-            System.err.println("Unable to receive message from client");
+            Log.error("Unable to receive message from client");
             return null;
         }
-
-        return packetToReceive;
     }
 
     /**
-     * Sends response to forwardAddress of datagramPacket
-     * @param datagramPacket - Packet to send to forward address
-     * @return
+     * @return - Bytes forwarded per second since the Network started, 0 before it started
      */
-    public int sendResponse(DatagramPacket datagramPacket){
-        if (datagramPacket != null){
-            String forwardAddressForPacket = datagramPacket.getAddress().getHostAddress();
-
-            try {
-                System.out.println("Packet being sent to: " + forwardAddressForPacket + " Port: " + datagramPacket.getPort());
+    public double throughput(){
+        long elapsed = System.nanoTime() - this._startedAt;
+        if (this._startedAt == 0 || elapsed <= 0){
+            return 0;
+        }
+        return NetworkWorker.BYTES_SENT.sum() * 1e9 / elapsed;
+    }
 
-                // Call underlying UDP method
-                this._socket.send(datagramPacket);
-            } catch (IOException e){
-                System.err.println("Error: Unable to forward packet to " +
-                                    forwardAddressForPacket + " Port: " + datagramPacket.getPort());
-                return -1;
-            }
+    /**
+     * @return - Number of flows in the routing tables of every worker
+     */
+    public int flowCount(){
+        int flows = 0;
+        for (NetworkWorker worker : this._workers){
+            flows += worker.flowCount();
         }
+        return flows;
+    }
 
-        return 0;
+    /**
+     * Prints the summary stats, counted by every worker
+     */
+    public void printStats() {
+        long packetCountFromSender = NetworkWorker.PACKETS_FROM_SENDER.sum();
+        long packetCountFromReceiver = NetworkWorker.PACKETS_FROM_RECEIVER.sum();
+
+        // Logged as one entry so the lines stay together
+        StringBuilder stats = new StringBuilder("\n");
+        stats.append("Total Packets Received From Sender: ").append(packetCountFromSender).append('\n');
+        stats.append("Total Packets Received From Receiver: ").append(packetCountFromReceiver).append('\n');
+        stats.append("Total Packets Received: ").append(packetCountFromSender + packetCountFromReceiver).append('\n');
+        stats.append("Total Packets Sent: ").append(NetworkWorker.PACKETS_SENT.sum()).append('\n');
+        stats.append("Lost Packets: ").append(NetworkWorker.PACKETS_LOST.sum()).append('\n');
+        stats.append("Delayed Packets: ").append(NetworkWorker.PACKETS_DELAYED.sum()).append('\n');
+        stats.append("Corrupt Packets: ").append(NetworkWorker.PACKETS_CORRUPT.sum()).append('\n');
+        stats.append("Dropped By Busy Workers: ").append(NetworkWorker.PACKETS_QUEUE_DROPPED.sum()).append('\n');
+        stats.append("Dropped Without Buffers: ").append(PACKETS_POOL_DROPPED.sum()).append('\n');
+        stats.append("Flows Evicted: ").append(FlowTable.FLOWS_EVICTED.sum()).append('\n');
+        stats.append("Dropped By Link Queues: ").append(BottleneckLink.PACKETS_TAIL_DROPPED.sum()).append(" tail, ")
+             .append(BottleneckLink.PACKETS_RED_DROPPED.sum()).append(" RED\n");
+        for (NetworkWorker worker : this._workers){
+            worker.appendFlows(stats);
+        }
+        Log.info(stats.toString());
     }
-    
 
     /**
      * Method that handles most of functionality of this class
-     * @param lostPercent       - Percent likelihood of packet being lost 
+     * @param lostPercent       - Percent likelihood of packet being lost, unless a loss model was set
      * @param delayedPercent    - Percent likelihood of packet being delayed
      * @param errorPercent      - Percent likelihood of packet being error
      */
     public void run(int lostPercent, int delayedPercent, int errorPercent) {
         this._continueService = true;
+        long packetsReceived = 0;
+        long nextStats = System.nanoTime();
+        if (this._lossModel == null){
+            this._lossModel = new LossModel(lostPercent);
+        }
 
-        // Variables for summary stats while sending network traffic
-        int packetsLost = 0;
-        int packetsDelayed = 0;
-        int packetsCorrupt = 0;
-        int packetCountFromSender = 0;
-        int packetCountFromReceiver = 0;
-        int packetsSent = 0;
-
-
-        System.out.println("Beginning Network...");
-
-        // Continue to listen for network traffic
-        while (this._continueService){
-
-            System.out.println("Listening on port " + this._port);
-
-            if (this._socket.isConnected()) {
-                this._socket.disconnect();
+        // Start the forwarding workers.  With one worker, packets are forwarded on this thread without a hand-off
+        this._workers = new NetworkWorker[this._workerCount];
+        for (int i = 0; i < this._workerCount; i++){
+            this._workers[i] = new NetworkWorker(i, this._channel, this._pool, this._delayQueue, this._delayModel,
+                                                 this._lossModel, this._seed, delayedPercent, errorPercent, this._dataLink, this._ackLink,
+                                                 this._maxFlows);
+        }
+        if (this._workerCount > 1){
+            this._workerThreads = new Thread[this._workerCount];
+            for (int i = 0; i < this._workerCount; i++){
+                this._workerThreads[i] = new Thread(this._workers[i]);
+                this._workerThreads[i].start();
             }
+        }
 
-            // Receive request
-            DatagramPacket packet = this.receiveRequest();
-            
-            String request = new String(packet.getData());
-            
-            HashMap<String, String> networkHeaderPortions = utility.parseNetworkHeader(request);
+        this._startedAt = System.nanoTime();
 
-            // Wrap message in StringBuffer to manipulate checksum byte later if error occurs for packet
-            StringBuffer message = new StringBuffer(networkHeaderPortions.get("message"));
+        // Removed again by closeSocket()
+        String labels = Metrics.instance("network", this._port);
+        Metrics.gauge("rdt_network_throughput_bytes_per_second", "Bytes forwarded per second since the Network started", labels, this::throughput);
+        Metrics.gauge("rdt_network_buffers_in_use", "Packet buffers holding a queued, delayed or in-flight packet", labels, () -> this._pool.inUse());
+        Metrics.gauge("rdt_network_flows", "Flows in the workers' routing tables", labels, () -> this.flowCount());
+        if (this._dataLink != null){
+            Metrics.gauge("rdt_network_link_data_queue_packets", "Packets waiting in the data link queue", labels, this._dataLink::queueLength);
+        }
+        if (this._ackLink != null){
+            Metrics.gauge("rdt_network_link_ack_queue_packets", "Packets waiting in the ack link queue", labels, this._ackLink::queueLength);
+        }
 
-            System.out.println("Packet received from: " + packet.getAddress().getHostAddress() + " Port: " + packet.getPort());
-            System.out.println("Request: " + request);
+        Log.info("Beginning Network with " + this._workerCount + " worker(s)...");
+        Log.info("Seed: " + this._seed + ", " + this._lossModel);
+        if (this._dataLink != null){
+            Log.info(this._dataLink.toString());
+        }
+        if (this._ackLink != null){
+            Log.info(this._ackLink.toString());
+        }
+        Log.info("Listening on port " + this._port);
 
-            // Increment packet counts from receiver if the message conatins a ACK portion
-            if(networkHeaderPortions.get("message").contains("ACK")){
-                packetCountFromReceiver++;
-            } else {
-                packetCountFromSender++;
-            }
+        // Continue to listen for network traffic
+        while (this._continueService){
 
-            // Attempt to connect Network to alternate program (i.e. switch connection from sender to receiver and vice versa)
+            // Wait until at least one packet can be read
+            // A socket closed while waiting, by closeSocket() from another thread, is a normal shutdown
             try {
-                this._socket.connect(InetAddress.getByName(networkHeaderPortions.get("destIP")), Integer.parseInt(networkHeaderPortions.get("destPort")));
-                
-
-            } catch (UnknownHostException e){
-                System.err.println("Error: Unable to connect to host " +
-                                    networkHeaderPortions.get("destIP") + " on port " + networkHeaderPortions.get("destPort"));
+                this._channel.await();
+            } catch (ClosedChannelException | ClosedSelectorException e){
                 return;
-            }
-
-            // Attempt to switch destination IP address and port of packet after having just swapped socket connection above
-            try {
-                packet.setAddress(InetAddress.getByName(networkHeaderPortions.get("destIP")));
-                packet.setPort(Integer.parseInt(networkHeaderPortions.get("destPort")));
-
-            }  catch (UnknownHostException e){
-                System.err.println("Error: Unable to connect to host " +
-                                    networkHeaderPortions.get("destIP") + " on port " + networkHeaderPortions.get("destPort"));
+            } catch (IOException e){
+                if (this._continueService){
+                    Log.error("Error: Unable to wait for packets");
+                }
                 return;
             }
 
-            
-            // Simulate delay of packet
-            if (delayedPercent > 0) {
-                if (Math.random() * 100 < delayedPercent) {
-                    System.out.println("Packet delayed");
-                    packetsDelayed++;
-                    
-                    // Thread to execute sendResponse after delaying 4 seconds
-                    new Thread(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                Thread.sleep(4000);
-                                // Forward the packet to the destination host and port
-                                sendResponse(packet);
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
-
-                        }
-                    }).start();
+            // Drain every packet that is waiting before waiting again
+            while (true){
+                ByteBuffer packet = this._pool.acquire();
+                boolean pooled = (packet != null);
+                if (!pooled){
+                    packet = this._spareBuffer;
+                    packet.clear();
+                }
 
+                InetSocketAddress source = this.receiveRequest(packet);
+                if (source == null){
+                    if (pooled){
+                        this._pool.release(packet);
+                    }
+                    break;
+                }
+                int receivedLength = packet.position();
+                packet.flip();
+
+                // Every buffer is holding a packet, so there is nowhere to keep this one
+                if (!pooled){
+                    PACKETS_POOL_DROPPED.increment();
+                    if (receivedLength >= NetworkHeader.HEADER_SIZE){
+                        PacketTrace.record(PacketTrace.DROPPED, this._header.wrap(packet));
+                    }
+                    Log.error("Error: Out of packet buffers, packet from " + source + " dropped");
                     continue;
                 }
-            }
 
-            // simulate lost packets
-            if (lostPercent > 0) {
-                if (Math.random() * 100 < lostPercent) {
-                    System.out.println("Packet lost");
-                    packetsLost++;
+                // Too short to hold a network header, nowhere to forward it
+                if (receivedLength < NetworkHeader.HEADER_SIZE){
+                    Log.error("Error: Runt packet of " + receivedLength + " bytes from " + source + " dropped");
+                    this._pool.release(packet);
+                    continue;
                 }
-            }
 
-            // simulate corrupt packet and alter checksum byte of message (Sender will resend packet)
-            if (errorPercent > 0) {
-                if (Math.random() * 100 < errorPercent) {
-                    System.out.println("Packet corrupted");
-                    packetsCorrupt++;
-
-                    // Flip checksum byte
-                    message.setCharAt(0, '1');
-                    
-                    String dataString = request.substring(0, request.length() - message.length()) + message;
-                    System.out.println(dataString);
-                    
-                    byte data[] = dataString.getBytes();
-                    packet.setData(data);
-                    System.out.println(packet.getData().toString());
+                if (Log.isEnabled(Log.DEBUG)){
+                    Log.debug("Packet received from: " + source);
+                }
+                packetsReceived++;
+
+                // The worker owns the buffer from here on and returns it to the pool
+                if (this._workerCount == 1){
+                    this._workers[0].process(packet);
+                } else {
+                    // Every packet of a flow goes to the same worker, which keeps the flow in order
+                    int hash = this._probeKey.set(this._header.wrap(packet)).hashCode();
+                    NetworkWorker worker = this._workers[Math.floorMod(hash, this._workerCount)];
+                    if (worker.enqueue(packet) < 0){
+                        Log.error("Error: Worker queue full, packet from " + source + " dropped");
+                        PacketTrace.record(PacketTrace.DROPPED, this._header);
+                        this._pool.release(packet);
+                    }
+                }
+
+                // print stats every 5 frames, at most once a second
+                if (packetsReceived % STATS_EVERY == 0 && Log.isEnabled(Log.INFO)) {
+                    long now = System.nanoTime();
+                    if (now - nextStats >= 0){
+                        this.printStats();
+                        nextStats = now + STATS_INTERVAL_NANOS;
+                    }
                 }
-            }
-            
-            // No errors occured and packet is sent as expected
-            this.sendResponse(packet);
-            packetsSent++;
-            System.out.println("");
-        
-            // print stats every 5 frames
-            if ((packetCountFromSender + packetCountFromReceiver) % 5 == 0) {
-                System.out.println("");
-                System.out.println("Total Packets Received From Sender: " + packetCountFromSender);
-                System.out.println("Total Packets Received From Receiver: " + packetCountFromReceiver);
-                System.out.println("Total Packets Received: " + (packetCountFromSender + packetCountFromReceiver));
-                System.out.println("Total Packets Sent: " + packetsSent);
-                System.out.println("Lost Packets: " + packetsLost);
-                System.out.println("Delayed Packets: " + packetsDelayed);
-                System.out.println("Corrupt Packets: " + packetsCorrupt);
-                System.out.println("");
             }
         }
     }
@@ -249,15 +363,66 @@ public class Network {
         Network network;
         int lostPercent, delayedPercent, errorPercent;
 
-        if (args.length != 4){
-            System.err.println("Usuage: java Network <network_port> <lostPercent> <delayedPercent> <errorPercent>");
+        if (args.length < 4){
+            Log.error("Usuage: java Network <network_port> <lostPercent> <delayedPercent> <errorPercent> " +
+                               "[--delay fixed|uniform|normal|pareto] [--delay-mean ms] [--delay-jitter ms] [--delay-shape alpha] [--workers N] [--max-flows N] " +
+                               "[--bandwidth kbit/s] [--burst bytes] [--queue packets] [--aqm droptail|red] [--red-min packets] [--red-max packets] [--red-max-p p] [--propagation ms] " +
+                               "[--seed N] [--loss bernoulli|gilbert|trace] [--gilbert-p %] [--gilbert-r %] [--gilbert-loss-good %] [--gilbert-loss-bad %] [--loss-trace path] " +
+                               "[--log-level off|error|info|debug] [--trace path] [--metrics-port port]");
+            return;
+        }
+
+        // Optional distribution of the delay given to delayed packets.  Defaults to a fixed 4 seconds
+        HashMap<String, String> options = new Utility().parseOptions(args, 4);
+        if (options == null || Log.configure(options) < 0 || Metrics.configure(options, "network") < 0){
+            return;
+        }
+        DelayModel delayModel = DelayModel.fromOptions(options);
+        if (delayModel == null){
+            return;
+        }
+
+        int workerCount, maxFlows;
+        try {
+            workerCount = Integer.parseInt(options.getOrDefault("workers", "1"));
+            maxFlows = Integer.parseInt(options.getOrDefault("max-flows", String.valueOf(FlowTable.DEFAULT_MAX_FLOWS)));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Number of workers and max flows must be integers");
+            return;
+        }
+        if (workerCount < 1 || maxFlows < 1){
+            Log.error("Error: Number of workers and max flows must be at least 1");
+            return;
+        }
+
+        // Optional seed, so a run can be repeated with the same faults.  Defaults to a random one, which is logged
+        long seed;
+        try {
+            seed = options.containsKey("seed") ? Long.parseLong(options.get("seed")) : ThreadLocalRandom.current().nextLong();
+        } catch (NumberFormatException e) {
+            Log.error("Error: Seed must be an integer");
+            return;
+        }
+
+        // Optional bottleneck link, the same in both directions
+        BottleneckLink dataLink = BottleneckLink.fromOptions(options, "data", seed);
+        BottleneckLink ackLink = BottleneckLink.fromOptions(options, "ack", seed);
+        if (dataLink == null || ackLink == null){
             return;
         }
 
-        network = new Network(Integer.parseInt(args[0]));
         lostPercent = Integer.parseInt(args[1]);
         delayedPercent = Integer.parseInt(args[2]);
         errorPercent = Integer.parseInt(args[3]);
+        LossModel lossModel = LossModel.fromOptions(options, lostPercent);
+        if (lossModel == null){
+            return;
+        }
+
+        network = new Network(Integer.parseInt(args[0]), delayModel, workerCount);
+        network.setLinks(dataLink, ackLink);
+        network.setFaultModel(lossModel, seed);
+        network.setMaxFlows(maxFlows);
         if (network.createSocket() < 0){
             return;
         }
@@ -0,0 +1,407 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the binary network header shared by the Sender, Receiver and Network.
+* The header has a fixed layout and is read and written in place over the bytes of a datagram,
+* so a single NetworkHeader object can be pointed at packet after packet without allocating.
+*
+* Layout (big-endian):
+*   0  source IPv4 address       (4 bytes)
+*   4  source port               (2 bytes)
+*   6  destination IPv4 address  (4 bytes)
+*   10 destination port          (2 bytes)
+*   12 sequence number           (4 bytes)
+*   16 ACK number                (4 bytes)
+*   20 flags                     (1 byte)
+*   21 reserved                  (1 byte)
+*   22 payload length            (2 bytes)
+*   24 connection ID             (4 bytes, chosen by the Sender and echoed in every ACK)
+*   28 checksum                  (4 bytes, CRC32C of every other byte of the packet)
+*   32 payload
+*
+* The payload size is agreed when a message starts: the SYN segment proposes the Sender's payload size in its ACK field,
+* and every ACK carries the payload size accepted by the Receiver in its SEQ field.  The payload of a SYN is empty, or holds the
+* length of the whole message (8 bytes) when the Sender knows it, so the Receiver can pre-size a mapped output file.
+* ACKs are cumulative: the ACK field is the sequence number of the last segment delivered in order.  The payload of an ACK
+* holds up to MAX_SACK_BLOCKS selective acknowledgement blocks, each the first and last sequence number (4 bytes each)
+* of a run of segments the Receiver holds beyond a gap.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: NetworkHeader.java
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+// NetworkHeader class
+public class NetworkHeader {
+    public static final int HEADER_SIZE = 32;     // Bytes in front of the payload
+    public static final int MAX_PACKET_SIZE = 65507;                        // Largest UDP payload over IPv4
+    public static final int MAX_PAYLOAD_SIZE = MAX_PACKET_SIZE - HEADER_SIZE; // Largest segment payload
+
+    public static final int SACK_BLOCK_SIZE = 8;  // Bytes of one SACK block in the payload of an ACK
+    public static final int MAX_SACK_BLOCKS = 4;  // Most SACK blocks an ACK carries
+    public static final int MAX_ACK_SIZE = HEADER_SIZE + MAX_SACK_BLOCKS * SACK_BLOCK_SIZE;   // Largest ACK packet
+    public static final int MESSAGE_LENGTH_SIZE = 8;    // Bytes of the message length in the payload of a SYN
+
+    private static final int DISPLAY_LIMIT = 64;  // Payload bytes shown by payloadString
+
+    // Flag bits
+    public static final int FLAG_ACK = 0x01;      // Packet is an ACK from the Receiver
+    public static final int FLAG_TERM = 0x02;     // Segment is the final segment of the message
+    public static final int FLAG_SYN = 0x04;      // Segment is the first segment of the message, its SEQ is the initial sequence number
+
+    // Field offsets
+    private static final int SRC_IP = 0;
+    private static final int SRC_PORT = 4;
+    private static final int DEST_IP = 6;
+    private static final int DEST_PORT = 10;
+    private static final int SEQ = 12;
+    private static final int ACK = 16;
+    private static final int FLAGS = 20;
+    private static final int LENGTH = 22;
+    private static final int CONNECTION = 24;
+    private static final int CHECKSUM = 28;
+
+    private ByteBuffer _buffer;   // Packet bytes the header is currently viewing
+    private final CRC32C _crc = new CRC32C();   // Reused for every checksum, so each thread needs its own header
+
+    /**
+     * Creates a header that is not viewing any packet yet.  Call wrap before using it
+     */
+    public NetworkHeader() {
+
+    }
+
+    /**
+     * Points the header at the bytes of a datagram.  Reuses the current view if it already covers the same array
+     * @param data - Datagram bytes, starting with the header
+     * @return     - This header
+     */
+    public NetworkHeader wrap(byte[] data){
+        if (this._buffer == null || !this._buffer.hasArray() || this._buffer.array() != data){
+            this._buffer = ByteBuffer.wrap(data);
+        }
+        return this;
+    }
+
+    /**
+     * Points the header at a buffer holding a datagram.  Only absolute accesses are used, so the buffer's position and limit are left alone
+     * @param buffer - Buffer starting with the header at index 0
+     * @return       - This header
+     */
+    public NetworkHeader wrap(ByteBuffer buffer){
+        this._buffer = buffer;
+        return this;
+    }
+
+    /**
+     * @return - The buffer being viewed
+     */
+    public ByteBuffer buffer(){
+        return this._buffer;
+    }
+
+    /**
+     * Writes every header field at once.  The checksum is cleared
+     * @param srcIP      - Source IPv4 address
+     * @param srcPort    - Source port number
+     * @param destIP     - Destination IPv4 address
+     * @param destPort   - Destination port number
+     * @param seq        - Sequence number
+     * @param ack        - ACK number
+     * @param flags      - Flag bits
+     * @param length     - Payload length
+     * @param connection - Connection ID
+     * @return           - This header
+     */
+    public NetworkHeader set(int srcIP, int srcPort, int destIP, int destPort, int seq, int ack, int flags, int length, int connection){
+        this._buffer.putInt(SRC_IP, srcIP);
+        this._buffer.putShort(SRC_PORT, (short) srcPort);
+        this._buffer.putInt(DEST_IP, destIP);
+        this._buffer.putShort(DEST_PORT, (short) destPort);
+        this._buffer.putInt(SEQ, seq);
+        this._buffer.putInt(ACK, ack);
+        this._buffer.put(FLAGS, (byte) flags);
+        this._buffer.put(FLAGS + 1, (byte) 0);
+        this._buffer.putShort(LENGTH, (short) length);
+        this._buffer.putInt(CONNECTION, connection);
+        this._buffer.putInt(CHECKSUM, 0);
+        return this;
+    }
+
+    public int srcIP(){
+        return this._buffer.getInt(SRC_IP);
+    }
+
+    public int srcPort(){
+        return this._buffer.getShort(SRC_PORT) & 0xFFFF;
+    }
+
+    public int destIP(){
+        return this._buffer.getInt(DEST_IP);
+    }
+
+    public int destPort(){
+        return this._buffer.getShort(DEST_PORT) & 0xFFFF;
+    }
+
+    public int seq(){
+        return this._buffer.getInt(SEQ);
+    }
+
+    public int ack(){
+        return this._buffer.getInt(ACK);
+    }
+
+    public int flags(){
+        return this._buffer.get(FLAGS) & 0xFF;
+    }
+
+    public boolean isAck(){
+        return (this.flags() & FLAG_ACK) != 0;
+    }
+
+    public boolean isTerm(){
+        return (this.flags() & FLAG_TERM) != 0;
+    }
+
+    public boolean isSyn(){
+        return (this.flags() & FLAG_SYN) != 0;
+    }
+
+    public int length(){
+        return this._buffer.getShort(LENGTH) & 0xFFFF;
+    }
+
+    public int connection(){
+        return this._buffer.getInt(CONNECTION);
+    }
+
+    public int checksum(){
+        return this._buffer.getInt(CHECKSUM);
+    }
+
+    public void setChecksum(int checksum){
+        this._buffer.putInt(CHECKSUM, checksum);
+    }
+
+    /**
+     * Computes the CRC32C of the packet directly over its bytes, skipping the checksum field.
+     * Heap buffers go through the array and direct buffers through the buffer itself, both without copying
+     * @return - The checksum
+     */
+    public int computeChecksum(){
+        int length = Math.min(this.length(), this._buffer.capacity() - HEADER_SIZE);
+        this._crc.reset();
+
+        if (this._buffer.hasArray()){
+            byte[] array = this._buffer.array();
+            int base = this._buffer.arrayOffset();
+            this._crc.update(array, base, CHECKSUM);
+            this._crc.update(array, base + HEADER_SIZE, length);
+        } else {
+            int position = this._buffer.position();
+            int limit = this._buffer.limit();
+            this._buffer.limit(CHECKSUM).position(0);
+            this._crc.update(this._buffer);
+            this._buffer.limit(HEADER_SIZE + length).position(HEADER_SIZE);
+            this._crc.update(this._buffer);
+            this._buffer.limit(limit).position(position);
+        }
+
+        return (int) this._crc.getValue();
+    }
+
+    /**
+     * Stores the checksum of the packet.  Call after every other field and the payload are written
+     */
+    public void updateChecksum(){
+        this.setChecksum(this.computeChecksum());
+    }
+
+    /**
+     * Checks a received packet against its checksum
+     * @param receivedLength - Number of bytes actually received
+     * @return               - True if the packet is intact
+     */
+    public boolean verifyChecksum(int receivedLength){
+        return receivedLength >= HEADER_SIZE && this.packetLength() <= receivedLength && this.computeChecksum() == this.checksum();
+    }
+
+    /**
+     * Flips a single bit of the packet in place (used by the Network to corrupt packets)
+     * @param bitIndex - Index of the bit counted from the start of the header
+     */
+    public void flipBit(int bitIndex){
+        int index = bitIndex >>> 3;
+        this._buffer.put(index, (byte) (this._buffer.get(index) ^ (1 << (bitIndex & 7))));
+    }
+
+    /**
+     * @return - Total number of bytes of the packet (header and payload)
+     */
+    public int packetLength(){
+        return HEADER_SIZE + this.length();
+    }
+
+    /**
+     * Copies a payload in after the header and sets the length field
+     * @param payload - Source bytes
+     * @param offset  - Index of the first payload byte in source
+     * @param length  - Number of payload bytes
+     */
+    public void putPayload(byte[] payload, int offset, int length){
+        if (this._buffer.hasArray()){
+            System.arraycopy(payload, offset, this._buffer.array(), this._buffer.arrayOffset() + HEADER_SIZE, length);
+        } else {
+            for (int i = 0; i < length; i++){
+                this._buffer.put(HEADER_SIZE + i, payload[offset + i]);
+            }
+        }
+        this._buffer.putShort(LENGTH, (short) length);
+    }
+
+    /**
+     * Copies the payload out of the packet
+     * @param destination - Array to copy into
+     * @param offset      - Index in destination to start at
+     * @return            - Number of bytes copied
+     */
+    public int getPayload(byte[] destination, int offset){
+        int length = this.length();
+        if (this._buffer.hasArray()){
+            System.arraycopy(this._buffer.array(), this._buffer.arrayOffset() + HEADER_SIZE, destination, offset, length);
+        } else {
+            for (int i = 0; i < length; i++){
+                destination[offset + i] = this._buffer.get(HEADER_SIZE + i);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Copies a payload in after the header from a buffer, such as a file mapping, and sets the length field
+     * @param payload - Source buffer, its position and limit are left alone
+     * @param index   - Index of the first payload byte in source
+     * @param length  - Number of payload bytes
+     */
+    public void putPayload(ByteBuffer payload, int index, int length){
+        this._buffer.put(HEADER_SIZE, payload, index, length);
+        this._buffer.putShort(LENGTH, (short) length);
+    }
+
+    /**
+     * Copies the payload out of the packet into a buffer, such as a file mapping
+     * @param destination - Buffer to copy into, its position and limit are left alone
+     * @param index       - Index in destination to start at
+     * @return            - Number of bytes copied
+     */
+    public int getPayload(ByteBuffer destination, int index){
+        int length = this.length();
+        destination.put(index, this._buffer, HEADER_SIZE, length);
+        return length;
+    }
+
+    /**
+     * Writes the length of the whole message into the payload of a SYN and sets the length field
+     * @param messageLength - Bytes in the message
+     */
+    public void putMessageLength(long messageLength){
+        this._buffer.putLong(HEADER_SIZE, messageLength);
+        this._buffer.putShort(LENGTH, (short) MESSAGE_LENGTH_SIZE);
+    }
+
+    /**
+     * @return - Bytes in the message a SYN starts; otherwise, -1 if the SYN does not announce them
+     */
+    public long messageLength(){
+        if (this.length() < MESSAGE_LENGTH_SIZE || this._buffer.capacity() < HEADER_SIZE + MESSAGE_LENGTH_SIZE){
+            return -1;
+        }
+        return this._buffer.getLong(HEADER_SIZE);
+    }
+
+    /**
+     * Writes a SACK block into the payload of an ACK.  The length field must be set to cover every block written
+     * @param index - Index of the block, below MAX_SACK_BLOCKS
+     * @param first - Sequence number of the first segment of the run
+     * @param last  - Sequence number of the last segment of the run
+     */
+    public void putSackBlock(int index, int first, int last){
+        this._buffer.putInt(HEADER_SIZE + index * SACK_BLOCK_SIZE, first);
+        this._buffer.putInt(HEADER_SIZE + index * SACK_BLOCK_SIZE + 4, last);
+    }
+
+    /**
+     * @return - Number of SACK blocks in the payload of an ACK
+     */
+    public int sackBlocks(){
+        int length = Math.min(this.length(), this._buffer.capacity() - HEADER_SIZE);
+        return Math.min(length / SACK_BLOCK_SIZE, MAX_SACK_BLOCKS);
+    }
+
+    /**
+     * @param index - Index of a SACK block
+     * @return      - Sequence number of the first segment of the block
+     */
+    public int sackFirst(int index){
+        return this._buffer.getInt(HEADER_SIZE + index * SACK_BLOCK_SIZE);
+    }
+
+    /**
+     * @param index - Index of a SACK block
+     * @return      - Sequence number of the last segment of the block
+     */
+    public int sackLast(int index){
+        return this._buffer.getInt(HEADER_SIZE + index * SACK_BLOCK_SIZE + 4);
+    }
+
+    /**
+     * Decodes the start of the payload as text.  Allocates, only meant for displaying messages
+     * @return - Up to the first DISPLAY_LIMIT bytes of the payload as a String, followed by "..." if there are more
+     */
+    public String payloadString(){
+        // A corrupted length field must not read past the buffer
+        int length = Math.min(this.length(), this._buffer.capacity() - HEADER_SIZE);
+        byte[] payload = new byte[Math.min(length, DISPLAY_LIMIT)];
+        for (int i = 0; i < payload.length; i++){
+            payload[i] = this._buffer.get(HEADER_SIZE + i);
+        }
+        return new String(payload, StandardCharsets.UTF_8) + (length > DISPLAY_LIMIT ? "..." : "");
+    }
+
+    /**
+     * Converts an IPv4 address held in an int to dotted decimal notation
+     * @param address - IPv4 address
+     * @return        - Address as a String (e.g. 127.0.0.1)
+     */
+    public static String ipToString(int address){
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    @Override
+    public String toString(){
+        return ipToString(this.srcIP()) + ":" + this.srcPort() + " -> " +
+               ipToString(this.destIP()) + ":" + this.destPort() +
+               " CONN: " + Integer.toHexString(this.connection()) +
+               " SEQ: " + this.seq() +
+               " ACK: " + this.ack() +
+               (this.isAck() ? " [ACK]" : "") +
+               (this.isSyn() ? " [SYN]" : "") +
+               (this.isTerm() ? " [TERM]" : "") +
+               " Checksum: " + this.checksum() +
+               (this.isAck() ? this.sackString() : " Message: " + this.payloadString());
+    }
+
+    private String sackString(){
+        StringBuilder sack = new StringBuilder();
+        for (int i = 0; i < this.sackBlocks(); i++){
+            sack.append(i == 0 ? " SACK: " : ", ").append(this.sackFirst(i)).append('-').append(this.sackLast(i));
+        }
+        return sack.toString();
+    }
+}
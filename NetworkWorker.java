@@ -0,0 +1,315 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines a forwarding worker of the Network.
+* The Network hashes every flow to one worker, so all packets of a flow are handled by the same thread in the order they arrived.
+* A worker owns the state of its flows, each with its own seeded random number generator, and counts into LongAdders shared by every worker (see Metrics),
+* so workers never contend with each other while injecting loss, delay and corruption and forwarding packets.
+* With a bottleneck link configured, packets that survive are queued on the link of their direction (segments or ACKs, see BottleneckLink),
+* which every worker shares, and the delay timer forwards them once they have crossed it.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: NetworkWorker.java
+*/
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// NetworkWorker class
+public class NetworkWorker implements Runnable {
+    private static final int QUEUE_CAPACITY = 4096;    // Packets waiting for the worker before new ones are dropped
+
+    private final int                       _index;         // Index of the worker, used in its thread name
+    private final Transport                 _channel;       // Transport shared by all workers for sending
+    private final BufferPool                _pool;          // Pool every packet buffer is returned to
+    private final ScheduledExecutorService  _delayQueue;    // Timer shared by all workers for delayed packets
+    private final DelayModel                _delayModel;
+    private final LossModel                 _lossModel;
+    private final long                      _seed;          // Seed every flow's generator is derived from
+    private final int                       _delayedPercent;
+    private final int                       _errorPercent;
+    private final BottleneckLink            _dataLink;      // Link crossed by segments, or null for none
+    private final BottleneckLink            _ackLink;       // Link crossed by ACKs, or null for none
+
+    private final ArrayBlockingQueue<ByteBuffer> _queue = new ArrayBlockingQueue<ByteBuffer>(QUEUE_CAPACITY);
+    private final NetworkHeader             _header = new NetworkHeader();
+    private final NetworkHeader             _delayHeader = new NetworkHeader();    // Only used on the delay timer's single thread
+
+    // Routing table of the flows hashed to this worker, looked up with a reusable probe key
+    private final FlowTable                 _flows;
+    private final Flow.Key                  _probeKey = new Flow.Key();
+    private Flow                            _lastFlow;      // Flow of the last packet, so a single transfer skips the map lookup
+
+    // Summary stats shared by every worker.  PACKETS_QUEUE_DROPPED is counted by the Network's receiving thread, the rest by the workers
+    public static final LongAdder PACKETS_LOST = Metrics.counter("rdt_network_packets_lost_total", "Packets dropped by simulated loss");
+    public static final LongAdder PACKETS_DELAYED = Metrics.counter("rdt_network_packets_delayed_total", "Packets held back by simulated delay");
+    public static final LongAdder PACKETS_CORRUPT = Metrics.counter("rdt_network_packets_corrupted_total", "Packets with a bit flipped by simulated corruption");
+    public static final LongAdder PACKETS_FROM_SENDER = Metrics.counter("rdt_network_packets_from_sender_total", "Segments received from Senders");
+    public static final LongAdder PACKETS_FROM_RECEIVER = Metrics.counter("rdt_network_packets_from_receiver_total", "ACKs received from Receivers");
+    public static final LongAdder PACKETS_SENT = Metrics.counter("rdt_network_packets_forwarded_total", "Packets forwarded without simulated delay, bottleneck link included");
+    public static final LongAdder BYTES_SENT = Metrics.counter("rdt_network_bytes_forwarded_total", "Bytes of the packets forwarded, delayed ones included");
+    public static final LongAdder PACKETS_QUEUE_DROPPED = Metrics.counter("rdt_network_packets_queue_dropped_total", "Packets dropped because their worker's queue was full");
+    private static final Metrics.Histogram DELAY = Metrics.histogram("rdt_network_injected_delay_seconds", "Delay drawn for each delayed packet");
+    private static final Metrics.Histogram DELAY_LATENESS = Metrics.histogram("rdt_network_delay_lateness_seconds", "How late the delay timer forwarded a delayed packet");
+
+    // Utility instance for converting header addresses
+    private Utility utility = new Utility();
+
+    /**
+     * Creates a worker
+     * @param index          - Index of the worker
+     * @param channel        - Transport used to forward packets
+     * @param pool           - Pool the packet buffers are returned to once forwarded or dropped
+     * @param delayQueue     - Timer delayed packets are scheduled on
+     * @param delayModel     - Distribution the delay of each delayed packet is drawn from
+     * @param lossModel      - Model deciding which packets are lost
+     * @param seed           - Seed the generator of each flow is derived from
+     * @param delayedPercent - Percent likelihood of packet being delayed
+     * @param errorPercent   - Percent likelihood of packet being error
+     * @param dataLink       - Bottleneck link segments cross, or null for none
+     * @param ackLink        - Bottleneck link ACKs cross, or null for none
+     * @param maxFlows       - Flows the worker's routing table holds before evicting the least recently used
+     */
+    public NetworkWorker(int index, Transport channel, BufferPool pool, ScheduledExecutorService delayQueue, DelayModel delayModel,
+                         LossModel lossModel, long seed, int delayedPercent, int errorPercent, BottleneckLink dataLink, BottleneckLink ackLink,
+                         int maxFlows) {
+        this._index = index;
+        this._channel = channel;
+        this._pool = pool;
+        this._delayQueue = delayQueue;
+        this._delayModel = delayModel;
+        this._lossModel = lossModel;
+        this._seed = seed;
+        this._delayedPercent = delayedPercent;
+        this._errorPercent = errorPercent;
+        this._dataLink = dataLink;
+        this._ackLink = ackLink;
+        this._flows = new FlowTable(maxFlows);
+    }
+
+    /**
+     * Hands a packet to the worker's thread.  Called by the Network's receiving thread
+     * @param packet - Pooled buffer holding the packet between position 0 and its limit
+     * @return       - 0, if the packet was queued and the worker now owns the buffer; otherwise, -1 when the worker is too far behind
+     *                 and the caller keeps the buffer
+     */
+    public int enqueue(ByteBuffer packet){
+        if (!this._queue.offer(packet)){
+            PACKETS_QUEUE_DROPPED.increment();
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Processes queued packets until the thread is interrupted
+     */
+    @Override
+    public void run(){
+        Thread.currentThread().setName("network-worker-" + this._index);
+
+        try {
+            while (true){
+                this.process(this._queue.take());
+            }
+        } catch (InterruptedException e){
+            // Network is shutting down
+        }
+    }
+
+    /**
+     * Sends a packet to the forward address of its flow
+     * @param packet      - Buffer holding the packet between its position and limit
+     * @param destination - Address to forward the packet to
+     * @return            - 0, if the packet was sent; otherwise, -1
+     */
+    public int sendResponse(ByteBuffer packet, InetSocketAddress destination){
+        try {
+            if (Log.isEnabled(Log.DEBUG)){
+                Log.debug("Packet being sent to: " + destination.getAddress().getHostAddress() + " Port: " + destination.getPort());
+            }
+
+            // Call underlying UDP method.  A full socket buffer drops the packet, like a real link would
+            if (this._channel.send(packet, destination) == 0){
+                Log.error("Error: Send buffer full, packet to " + destination + " dropped");
+                return -1;
+            }
+        } catch (IOException e){
+            Log.error("Error: Unable to forward packet to " +
+                                destination.getAddress().getHostAddress() + " Port: " + destination.getPort());
+            return -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Finds the state of the packet's flow, creating it the first time the (src, dst) tuple is seen
+     * @param header - Network header viewing the packet
+     * @return       - State of the flow
+     */
+    private Flow lookupFlow(NetworkHeader header){
+        this._probeKey.set(header);
+        Flow flow = this._lastFlow;
+        if (flow != null && flow.key.equals(this._probeKey)){
+            // The table still has to see the packet, or a flow that keeps sending would age into the eldest entry and be evicted
+            this._flows.touch(flow);
+            return flow;
+        }
+        flow = this._flows.get(this._probeKey);
+
+        if (flow == null){
+            InetSocketAddress destination = new InetSocketAddress(this.utility.toInetAddress(header.destIP()), header.destPort());
+            flow = new Flow(this._probeKey.copy(), destination, this._seed);
+            this._flows.put(flow);
+            Log.info("New flow on worker " + this._index + ": " + flow.key);
+        }
+
+        this._lastFlow = flow;
+        return flow;
+    }
+
+    /**
+     * Sends a delayed packet once its delay has passed and returns its buffer to the pool.  Runs on the delay timer's thread
+     * @param packet   - Pooled buffer holding the packet
+     * @param flow     - Flow of the packet, forwarded to its destination
+     * @param due      - System.nanoTime() the packet was due to be forwarded at
+     * @param linkOnly - True if only the bottleneck link held the packet back, so it counts as forwarded without simulated delay
+     */
+    private void sendDelayed(ByteBuffer packet, Flow flow, long due, boolean linkOnly){
+        DELAY_LATENESS.record(Math.max(0, System.nanoTime() - due));
+        int length = packet.remaining();
+        if (this.sendResponse(packet, flow.destination) == 0){
+            if (linkOnly){
+                PACKETS_SENT.increment();
+                // A flow's packets are all data or all ACKs, so a flow crossing a link is only counted here, on the timer's thread
+                flow.forwarded++;
+            }
+            BYTES_SENT.add(length);
+            PacketTrace.record(PacketTrace.FORWARDED, this._delayHeader.wrap(packet));
+        }
+        this._pool.release(packet);
+    }
+
+    /**
+     * Simulates loss, delay and corruption for one packet and forwards it if it survives
+     * @param packet - Pooled buffer holding the packet between position 0 and its limit.  Returned to the pool once the packet is sent or dropped
+     */
+    public void process(ByteBuffer packet){
+        int receivedLength = packet.limit();
+        NetworkHeader header = this._header.wrap(packet);
+        Flow flow = this.lookupFlow(header);
+        flow.packets++;
+
+        PacketTrace.record(PacketTrace.RECEIVED, header);
+        if (Log.isEnabled(Log.DEBUG)){
+            Log.debug("Request: " + header);
+        }
+
+        // Increment packet counts from receiver if the packet is an ACK
+        if (header.isAck()){
+            PACKETS_FROM_RECEIVER.increment();
+        } else {
+            PACKETS_FROM_SENDER.increment();
+        }
+
+        // Simulate delay of packet.  Delayed packets are never lost or corrupted
+        long delayNanos = 0;
+        boolean delayed = this._delayedPercent > 0 && flow.random.nextDouble() * 100 < this._delayedPercent;
+        if (delayed) {
+            long delay = this._delayModel.nextDelayMillis(flow.random);
+            PacketTrace.record(PacketTrace.DELAYED, header);
+            if (Log.isEnabled(Log.DEBUG)){
+                Log.debug("Packet delayed " + delay + " ms");
+            }
+            PACKETS_DELAYED.increment();
+            DELAY.record(TimeUnit.MILLISECONDS.toNanos(delay));
+            flow.delayed++;
+            delayNanos = TimeUnit.MILLISECONDS.toNanos(delay);
+        } else {
+            // simulate lost packets
+            if (this._lossModel.lose(flow)) {
+                PacketTrace.record(PacketTrace.LOST, header);
+                Log.debug("Packet lost");
+                PACKETS_LOST.increment();
+                flow.lost++;
+                this._pool.release(packet);
+                return;
+            }
+
+            // simulate corrupt packet by flipping a random bit of it in place (checksum fails and Sender will resend packet)
+            if (this._errorPercent > 0 && flow.random.nextDouble() * 100 < this._errorPercent) {
+                PacketTrace.record(PacketTrace.CORRUPTED, header);
+                Log.debug("Packet corrupted");
+                PACKETS_CORRUPT.increment();
+                flow.corrupt++;
+
+                header.flipBit(flow.random.nextInt(receivedLength * 8));
+            }
+        }
+
+        BottleneckLink link = header.isAck() ? this._ackLink : this._dataLink;
+        if (!delayed && link == null){
+            // No errors occured and packet is sent as expected
+            if (this.sendResponse(packet, flow.destination) == 0){
+                PACKETS_SENT.increment();
+                BYTES_SENT.add(receivedLength);
+                flow.forwarded++;
+                PacketTrace.record(PacketTrace.FORWARDED, header);
+            }
+            this._pool.release(packet);
+            return;
+        }
+
+        // The packet waits for its turn on the link, and any simulated delay on top of that
+        long due = System.nanoTime() + delayNanos;
+        if (link != null){
+            long arrival = link.admit(receivedLength);
+            if (arrival == BottleneckLink.DROPPED){
+                PacketTrace.record(PacketTrace.DROPPED, header);
+                Log.debug("Packet dropped by the link queue");
+                flow.dropped++;
+                this._pool.release(packet);
+                return;
+            }
+            due = arrival + delayNanos;
+        }
+
+        // The timer keeps the buffer and forwards the packet to the destination host and port once it is due.
+        // Packets crossing the link are counted as they leave it, not while they may still wait in its queue
+        long finalDue = due;
+        boolean linkOnly = !delayed;
+        this._delayQueue.schedule(() -> this.sendDelayed(packet, flow, finalDue, linkOnly), due - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Finds the state of a flow owned by this worker, marking it as recently used
+     * @param key - (src, dst) tuple of the flow
+     * @return    - State of the flow, or null if it is not in the routing table
+     */
+    public Flow flow(Flow.Key key){
+        return this._flows.get(key);
+    }
+
+    /**
+     * @return - Number of flows owned by this worker
+     */
+    public int flowCount(){
+        return this._flows.size();
+    }
+
+    /**
+     * Appends the state of every flow owned by this worker, one per line.  Only a snapshot, the worker may be updating it
+     * @param stats - Text the flows are appended to
+     */
+    public void appendFlows(StringBuilder stats){
+        this._flows.appendTo(stats, "  Worker " + this._index + ": ");
+    }
+}
@@ -0,0 +1,274 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program records a compact binary trace of packet events (sent, received, lost, delayed, ...) for offline replay.
+* Events are placed in a lock-free ring of primitive fields and written to the trace file by a background thread,
+* so recording allocates nothing and never waits on the disk.  An event is dropped (and counted) instead of blocking when the ring is full.
+* Recording returns after a single field read while tracing is off, so call sites need no guard.
+*
+* File layout (big-endian): a 16 byte file header (magic "RDTT", version, start time in epoch milliseconds)
+* followed by one 32 byte record per event:
+*   0  nanoseconds since the trace started  (8 bytes)
+*   8  source IPv4 address                  (4 bytes)
+*   12 source port                          (2 bytes)
+*   14 destination IPv4 address             (4 bytes)
+*   18 destination port                     (2 bytes)
+*   20 sequence number                      (4 bytes)
+*   24 ACK number                           (4 bytes)
+*   28 payload length                       (2 bytes)
+*   30 header flags                         (1 byte)
+*   31 event                                (1 byte)
+*
+* Run "java PacketTrace <trace file>" to print a trace as text.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: PacketTrace.java
+*/
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// PacketTrace class
+public final class PacketTrace {
+    // Events
+    public static final int SENT = 1;           // Sender sent a segment or Receiver sent an ACK
+    public static final int RECEIVED = 2;       // Intact packet arrived at the Sender, Receiver or Network
+    public static final int CORRUPT = 3;        // Packet failed its checksum
+    public static final int DELIVERED = 4;      // Receiver accepted a new segment
+    public static final int DUPLICATE = 5;      // Receiver got a segment it already had
+    public static final int FORWARDED = 6;      // Network forwarded the packet
+    public static final int LOST = 7;           // Network dropped the packet on purpose
+    public static final int DELAYED = 8;        // Network is holding the packet back
+    public static final int CORRUPTED = 9;      // Network flipped a bit of the packet
+    public static final int DROPPED = 10;       // Network had no room for the packet
+
+    private static final String[] EVENT_NAMES = { "?", "SENT", "RECEIVED", "CORRUPT", "DELIVERED", "DUPLICATE",
+                                                  "FORWARDED", "LOST", "DELAYED", "CORRUPTED", "DROPPED" };
+
+    private static final int MAGIC = 0x52445454;    // "RDTT"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 32;
+
+    private static final int CAPACITY = 1 << 16;    // Events the ring holds, a power of two
+    private static final int MASK = CAPACITY - 1;
+    private static final long IDLE_NANOS = 1000000L;
+
+    private static volatile boolean _enabled;
+    private static long             _start;     // System.nanoTime() when the trace was opened
+
+    // Ring of pending events, four longs each.  _published holds the sequence number of the event in each slot
+    // once its fields are written, so the writer never reads a half written event
+    private static long[]           _events;
+    private static AtomicLongArray  _published;
+    private static final AtomicLong _tail = new AtomicLong();
+    private static volatile long    _head;
+    private static final AtomicLong _dropped = new AtomicLong();
+
+    private static FileChannel      _file;
+    private static Thread           _writer;
+
+    private PacketTrace() {
+
+    }
+
+    /**
+     * Starts tracing to a file, replacing its contents
+     * @param path - Trace file
+     * @return     - 0, if the file was opened; otherwise, -1
+     */
+    public static int open(String path){
+        try {
+            _file = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+            _file.write(header);
+        } catch (IOException e) {
+            Log.error("Error: Unable to open trace file " + path);
+            return -1;
+        }
+
+        _events = new long[CAPACITY * 4];
+        _published = new AtomicLongArray(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++){
+            _published.set(i, -1);
+        }
+        _start = System.nanoTime();
+
+        _writer = new Thread(PacketTrace::drain, "trace-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+        _enabled = true;
+        return 0;
+    }
+
+    /**
+     * @return - True while a trace is being recorded
+     */
+    public static boolean enabled(){
+        return _enabled;
+    }
+
+    /**
+     * Records an event for the packet a network header is viewing, without waiting.  Does nothing while tracing is off
+     * @param event  - One of the event constants
+     * @param header - Network header viewing the packet
+     */
+    public static void record(int event, NetworkHeader header){
+        if (!_enabled){
+            return;
+        }
+
+        long seq;
+        do {
+            seq = _tail.get();
+            if (seq - _head >= CAPACITY){
+                _dropped.incrementAndGet();
+                return;
+            }
+        } while (!_tail.compareAndSet(seq, seq + 1));
+
+        int slot = (int) seq & MASK;
+        int base = slot * 4;
+        _events[base] = System.nanoTime() - _start;
+        _events[base + 1] = ((header.srcIP() & 0xFFFFFFFFL) << 32) | ((long) header.srcPort() << 16) |
+                            ((header.flags() & 0xFF) << 8) | event;
+        _events[base + 2] = ((header.destIP() & 0xFFFFFFFFL) << 32) | ((long) header.destPort() << 16) | (header.length() & 0xFFFF);
+        _events[base + 3] = ((long) header.seq() << 32) | (header.ack() & 0xFFFFFFFFL);
+        _published.lazySet(slot, seq);
+    }
+
+    /**
+     * @return - Number of events dropped because the ring was full
+     */
+    public static long dropped(){
+        return _dropped.get();
+    }
+
+    /**
+     * Writer thread: encodes events in the order they were claimed and writes them in large blocks
+     */
+    private static void drain(){
+        ByteBuffer block = ByteBuffer.allocateDirect(RECORD_SIZE * 2048);
+        long head = _head;
+
+        try {
+            while (true){
+                int slot = (int) head & MASK;
+
+                if (_published.get(slot) != head || !block.hasRemaining()){
+                    flush(block);
+
+                    if (_published.get(slot) != head){
+                        if (!_enabled && head == _tail.get()){
+                            return;
+                        }
+                        LockSupport.parkNanos(IDLE_NANOS);
+                    }
+                    continue;
+                }
+
+                int base = slot * 4;
+                long src = _events[base + 1];
+                long dst = _events[base + 2];
+                long seqAck = _events[base + 3];
+                block.putLong(_events[base]);
+                block.putInt((int) (src >>> 32)).putShort((short) (src >>> 16));
+                block.putInt((int) (dst >>> 32)).putShort((short) (dst >>> 16));
+                block.putLong(seqAck);
+                block.putShort((short) dst);
+                block.put((byte) (src >>> 8)).put((byte) src);
+
+                _head = ++head;
+            }
+        } catch (IOException e) {
+            _enabled = false;
+        }
+    }
+
+    private static void flush(ByteBuffer block) throws IOException {
+        block.flip();
+        while (block.hasRemaining()){
+            _file.write(block);
+        }
+        block.clear();
+    }
+
+    /**
+     * Stops tracing once every recorded event is written and closes the file
+     */
+    public static void close(){
+        if (_writer == null){
+            return;
+        }
+        _enabled = false;
+        LockSupport.unpark(_writer);
+        try {
+            _writer.join(1000);
+            _file.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Nothing more can be saved
+        }
+    }
+
+    /**
+     * Prints a trace file as text, one event per line
+     * @param args - Trace file
+     */
+    public static void main(String[] args) {
+        if (args.length < 1){
+            System.err.println("Usuage: java PacketTrace <trace_file>");
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(args[0])))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                System.err.println("Error: " + args[0] + " is not a packet trace");
+                return;
+            }
+            System.out.println("Trace started at " + new java.util.Date(in.readLong()));
+
+            while (true){
+                long time;
+                try {
+                    time = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int srcIP = in.readInt();
+                int srcPort = in.readUnsignedShort();
+                int destIP = in.readInt();
+                int destPort = in.readUnsignedShort();
+                int seq = in.readInt();
+                int ack = in.readInt();
+                int length = in.readUnsignedShort();
+                int flags = in.readUnsignedByte();
+                int event = in.readUnsignedByte();
+
+                System.out.println(String.format("%12.6f ms %-9s %s:%d -> %s:%d SEQ: %d ACK: %d LEN: %d%s%s%s",
+                    time / 1e6, EVENT_NAMES[event < EVENT_NAMES.length ? event : 0],
+                    NetworkHeader.ipToString(srcIP), srcPort, NetworkHeader.ipToString(destIP), destPort, seq, ack, length,
+                    (flags & NetworkHeader.FLAG_ACK) != 0 ? " [ACK]" : "",
+                    (flags & NetworkHeader.FLAG_SYN) != 0 ? " [SYN]" : "",
+                    (flags & NetworkHeader.FLAG_TERM) != 0 ? " [TERM]" : ""));
+            }
+        } catch (IOException e) {
+            System.err.println("Error: Unable to read " + args[0]);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the Receiver's reassembly buffer, indexed by sequence number.
+* Segments inside the receive window are copied into a ring of fixed size slots at seq % capacity and a bitmap marks the occupied slots,
+* so a duplicate is detected in constant time and repeated payloads (e.g. "aaaaaaa" twice) are never mistaken for duplicates.
+* Segments are delivered in sequence order into the message, whatever order they arrived in.
+* The buffer only ever holds one window of segments, however long the message is.
+* The runs of segments held beyond a gap are reported as SACK blocks, so the Sender knows which segments it need not resend.
+* Delivered bytes are kept for printing, or written straight through to an output stream so a streamed transfer of any size uses constant memory.
+* When the message is received into a mapped file (see MappedFile), each payload is copied straight to its offset in the mapping as it arrives
+* and the slots only track which segments are held; delivering them just moves the base.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: ReassemblyBuffer.java
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// ReassemblyBuffer class
+public class ReassemblyBuffer {
+    // Return codes of insert
+    public static final int INSERTED = 0;
+    public static final int DUPLICATE = 1;
+    public static final int OUT_OF_WINDOW = -1;
+    public static final int TOO_LARGE = -2;
+
+    private final int       _capacity;      // Number of slots, the receive window size
+    private int             _slotSize;      // Largest payload a slot holds, the payload size agreed for the message
+    private byte[]          _data;          // Payload of slot i starts at i * _slotSize
+    private final int[]     _lengths;       // Payload length of each slot
+    private final long[]    _present;       // Bitmap of occupied slots
+    private int             _base;          // Sequence number of the next segment to deliver
+    private int             _termSeq;       // Sequence number of the final segment, once it arrived
+    private boolean         _hasTerm;       // True once the final segment of the message arrived
+    private boolean         _complete;      // True once the final segment was delivered
+    private int             _buffered;      // Segments held beyond a gap, waiting for an earlier one
+
+    // Bytes delivered in order for the current message, unless they are written to a sink
+    private ByteArrayOutputStream _message = new ByteArrayOutputStream();
+    private OutputStream    _sink;
+    private long            _messageBytes;  // Bytes delivered for the current message
+
+    // Mapped region the current message is received into, or null to buffer its payloads in the slots
+    private MappedFile      _target;
+    private int             _firstSeq;      // Sequence number of the message's first segment, at offset 0 of the region
+
+    /**
+     * Creates a reassembly buffer.  Its slots are sized when the first message starts
+     * @param capacity - Number of segments that can be buffered ahead of the next one to deliver
+     */
+    public ReassemblyBuffer(int capacity) {
+        this._capacity = capacity;
+        this._data = new byte[0];
+        this._lengths = new int[capacity];
+        this._present = new long[(capacity + 63) / 64];
+    }
+
+    /**
+     * Writes delivered bytes to an output stream instead of keeping them in memory
+     * @param sink - Stream every message is appended to
+     */
+    public void setSink(OutputStream sink){
+        this._sink = sink;
+    }
+
+    /**
+     * Starts a new message, discarding anything buffered for the previous one
+     * @param base     - Sequence number of the first segment of the message
+     * @param slotSize - Largest payload of a segment of the message in bytes
+     */
+    public void reset(int base, int slotSize){
+        this.reset(base, slotSize, null);
+    }
+
+    /**
+     * Starts a new message received into a mapped region, discarding anything buffered for the previous one
+     * @param base     - Sequence number of the first segment of the message
+     * @param slotSize - Largest payload of a segment of the message in bytes, the segment size of the region
+     * @param target   - Region the message is written into, or null to buffer it in the slots
+     */
+    public void reset(int base, int slotSize, MappedFile target){
+        // Slots are only reallocated when the payload size of the message changes
+        if (slotSize != this._slotSize){
+            this._slotSize = slotSize;
+            this._data = new byte[this._capacity * slotSize];
+        }
+        Arrays.fill(this._present, 0);
+        this._buffered = 0;
+        this._message.reset();
+        this._messageBytes = 0;
+        this._base = base;
+        this._firstSeq = base;
+        this._target = target;
+        this._hasTerm = false;
+        this._complete = false;
+    }
+
+    /**
+     * @return - Sequence number of the next segment to deliver
+     */
+    public int base(){
+        return this._base;
+    }
+
+    /**
+     * @param seq - Sequence number of a segment
+     * @return    - Distance of the segment from the next one to deliver; negative if it was already delivered
+     */
+    public int offset(int seq){
+        return seq - this._base;
+    }
+
+    /**
+     * @param seq - Sequence number of a segment
+     * @return    - True if the segment was already delivered or is waiting in the buffer
+     */
+    public boolean contains(int seq){
+        int offset = this.offset(seq);
+        if (offset < 0){
+            return true;
+        }
+        return offset < this._capacity && this.isPresent(Math.floorMod(seq, this._capacity));
+    }
+
+    private boolean isPresent(int slot){
+        return (this._present[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setPresent(int slot, boolean present){
+        if (present){
+            this._present[slot >>> 6] |= 1L << slot;
+        } else {
+            this._present[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * Copies the payload of a verified segment into its slot
+     * @param header - Network header viewing the segment
+     * @return       - INSERTED, DUPLICATE, OUT_OF_WINDOW if the segment is beyond the window, or TOO_LARGE if its payload does not fit a slot
+     *                 or its place in the mapped region
+     */
+    public int insert(NetworkHeader header){
+        int seq = header.seq();
+        int offset = this.offset(seq);
+
+        if (offset < 0){
+            return DUPLICATE;
+        }
+        if (offset >= this._capacity){
+            return OUT_OF_WINDOW;
+        }
+        if (header.length() > this._slotSize){
+            return TOO_LARGE;
+        }
+
+        int slot = Math.floorMod(seq, this._capacity);
+        if (this.isPresent(slot)){
+            return DUPLICATE;
+        }
+
+        if (this._target != null){
+            // Sequence numbers wrap, the index in the region is the unsigned distance from the first segment
+            int written = this._target.write(Integer.toUnsignedLong(seq - this._firstSeq), header);
+            if (written < 0){
+                return TOO_LARGE;
+            }
+            this._lengths[slot] = written;
+        } else {
+            this._lengths[slot] = header.getPayload(this._data, slot * this._slotSize);
+        }
+        this.setPresent(slot, true);
+        this._buffered++;
+        if (header.isTerm()){
+            this._termSeq = seq;
+            this._hasTerm = true;
+        }
+        return INSERTED;
+    }
+
+    /**
+     * Moves the segments at the front of the buffer into the message, in sequence order, up to the first gap
+     * @return - Number of segments delivered; otherwise, -1 if the sink could not be written
+     */
+    public int deliver(){
+        int delivered = 0;
+
+        try {
+            while (!this._complete){
+                int slot = Math.floorMod(this._base, this._capacity);
+                if (!this.isPresent(slot)){
+                    break;
+                }
+
+                // A mapped region already holds the payload in place
+                if (this._target == null && this._sink != null){
+                    this._sink.write(this._data, slot * this._slotSize, this._lengths[slot]);
+                } else if (this._target == null){
+                    this._message.write(this._data, slot * this._slotSize, this._lengths[slot]);
+                }
+                this._messageBytes += this._lengths[slot];
+                this.setPresent(slot, false);
+                this._buffered--;
+                if (this._hasTerm && this._base == this._termSeq){
+                    this._complete = true;
+                }
+                this._base++;
+                delivered++;
+            }
+
+            // A finished message is pushed all the way out of the sink's buffers
+            if (this._complete && this._sink != null && this._target == null){
+                this._sink.flush();
+            }
+        } catch (IOException e) {
+            Log.error("Error: Unable to write the delivered message");
+            return -1;
+        }
+
+        return delivered;
+    }
+
+    /**
+     * @return - Number of segments held beyond a gap.  Zero when every segment received so far was delivered
+     */
+    public int buffered(){
+        return this._buffered;
+    }
+
+    /**
+     * Lists the runs of segments held beyond the next one to deliver, lowest first
+     * @param blocks - Filled with the first and last sequence number of each run, two entries per run
+     * @param max    - Most runs to list
+     * @return       - Number of runs listed
+     */
+    public int sackBlocks(int[] blocks, int max){
+        if (this._buffered == 0){
+            return 0;
+        }
+
+        int count = 0;
+        int runStart = -1;
+        for (int offset = 1; offset < this._capacity && count < max; offset++){
+            boolean present = this.isPresent(Math.floorMod(this._base + offset, this._capacity));
+            if (present && runStart < 0){
+                runStart = offset;
+            } else if (!present && runStart >= 0){
+                blocks[2 * count] = this._base + runStart;
+                blocks[2 * count + 1] = this._base + offset - 1;
+                count++;
+                runStart = -1;
+            }
+        }
+        if (runStart >= 0 && count < max){
+            blocks[2 * count] = this._base + runStart;
+            blocks[2 * count + 1] = this._base + this._capacity - 1;
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * @return - True once the final segment of the message was delivered
+     */
+    public boolean isComplete(){
+        return this._complete;
+    }
+
+    /**
+     * @return - Number of bytes delivered for the current message
+     */
+    public long messageBytes(){
+        return this._messageBytes;
+    }
+
+    /**
+     * @return - Bytes delivered so far, decoded as UTF-8 text.  Empty when the bytes go to a sink
+     */
+    public String messageString(){
+        return this._message.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -3,6 +3,18 @@
 * The receiver listens for incoming UDP packets on a specified port.
 * The receiver gets the UDP packets, extracts the custom network header, processes the data, and generates responses. 
 * The receiver will continue to listen for and manage the received packets until a Shutdown message is received.
+* With --output, delivered bytes are written straight to a file (or stdout for "-") instead of being printed, so streamed transfers use constant memory.
+* ACKs are cumulative and, in Selective Repeat, list the segments held beyond a gap as SACK blocks.
+* In-order segments are ACKed together, once every --ack-every segments or --ack-delay ms after the first one,
+* while gaps, duplicates and the start and end of a message are ACKed at once.
+* Every Sender's segments carry its connection ID, and the Receiver keeps a ReceiverSession per connection, so several Senders can
+* transfer at once.  With --workers N, the connection IDs are hashed to N ReceiverWorker threads; a session is only touched by its worker.
+* Sessions are opened by a SYN, limited by --max-sessions and closed after --session-timeout seconds without a segment.
+* With --output <directory>, each connection writes to its own file; a single output file or stdout interleaves concurrent transfers.
+* Messages whose SYN announces their length, like files the Sender maps, are written into a pre-sized mapped region of the output file
+* segment by segment at their offsets, instead of through the output stream.  A SYN announcing more than --max-message-size bytes is refused.
+* Packets go over UDP, or over the in-memory transport when the Receiver runs in one JVM with the Network and Sender (see Transport and Launcher).
+* Segments received, corrupt and duplicate segments, ACKs sent, delivered bytes, message times, sessions and goodput are published as metrics (see Metrics).
   
 * @authors:   Ben Yanick and Gina  Wittman
 * @date:      08/08/2023
@@ -11,23 +23,68 @@
 * File name: Receiver.java
 */
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
-import java.util.ArrayList;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 //The Receiver class 
 public class Receiver {
-    private DatagramSocket      _socket;  // The DatagramSocket to send and receive datagrams
-    private int                 _port;    // The port number that the receiver will listen on
-    private boolean             _continueService;  // A boolean flag to control the receiver main loop
+    private static final int POOL_SIZE = 1024;      // Most datagrams waiting for the workers at once
+    public static final long DEFAULT_MAX_MESSAGE_LENGTH = 1L << 32;    // Largest announced message mapped into an output file, 4 GB
 
-    private static final int BUFFER_SIZE = 54; // The constant buffer size for received packets
+    // Metrics shared by every Receiver in the process
+    private static final LongAdder SESSIONS_OPENED = Metrics.counter("rdt_receiver_sessions_opened_total", "Sessions opened by a SYN of a new connection");
+    private static final LongAdder SESSIONS_REJECTED = Metrics.counter("rdt_receiver_sessions_rejected_total", "SYNs of new connections refused because too many sessions were open");
+    private static final LongAdder SEGMENTS_POOL_DROPPED = Metrics.counter("rdt_receiver_segments_pool_dropped_total", "Segments dropped because every datagram was waiting for a worker");
 
-    // Utility class to create network header for RDT packet
-    private Utility utility = new Utility();
+    private Transport           _socket;  // The transport to send and receive datagrams, UDP unless configured
+    private Transport.Kind      _transportKind = Transport.Kind.UDP;
+    private int                 _port;    // The port number that the receiver will listen on
+    private volatile boolean    _continueService;  // A boolean flag to control the receiver main loop
+
+    // Settings every session is created with
+    private WindowMode          _mode;              // Retransmission mode agreed with the Senders
+    private int                 _windowSize;        // Number of segments a Sender may have in flight
+    private int                 _maxPayloadSize;    // Largest payload size the Receiver accepts
+    private int                 _ackEvery = 1;      // ACK in-order segments after this many of them
+    private int                 _ackDelayMillis;    // ACK in-order segments no later than this after the first one not ACKed yet
+    private long                _maxMessageLength = DEFAULT_MAX_MESSAGE_LENGTH;    // Largest message length a SYN may announce
+
+    // Sessions.  Each connection ID is hashed to one worker, which owns the sessions of its connections
+    private int                 _workerCount = 1;
+    private ReceiverWorker[]    _workers;
+    private Thread[]            _workerThreads;
+    private int                 _maxSessions = 1024;
+    private long                _sessionTimeoutNanos = 60000000000L;
+    private final AtomicInteger _sessionCount = new AtomicInteger();
+    private volatile long       _firstSessionAt;    // System.nanoTime() when the first session opened, 0 until then
+
+    // Where sessions write delivered messages: one shared stream, a file per connection in a directory, or neither to print them
+    private OutputStream        _output;
+    private FileChannel         _outputChannel;     // File the shared stream writes to, null for stdout
+    private String              _outputName;
+    private File                _outputDirectory;
+
+    // Datagrams handed to the workers, reused once a worker is done with them.  With one worker the single
+    // _receivePacket is used and segments are processed on the reading thread without a hand-off
+    private ArrayBlockingQueue<DatagramPacket> _packetPool;
+    private int                 _packetsAllocated;
+    private DatagramPacket      _receivePacket;
+    private DatagramPacket      _sparePacket;       // Receives a segment when every datagram is in use, so it can be dropped
+    private int                 _socketTimeout;     // Current socket timeout in milliseconds, 0 for none
+
+    private NetworkHeader       _receiveHeader = new NetworkHeader();
     
     /**
      * Receiver constructor
@@ -35,10 +92,154 @@ public class Receiver {
      * @param port: Port number that Receiver will receive and send messages on
      */
     public Receiver(int port) {
+        this(port, WindowMode.STOP_AND_WAIT, 1);
+    }
+
+    /**
+     * Receiver constructor for a given retransmission mode
+     * 
+     * @param port:       Port number that Receiver will receive and send messages on
+     * @param mode:       Retransmission mode the Sender uses
+     * @param windowSize: Window size the Sender uses
+     */
+    public Receiver(int port, WindowMode mode, int windowSize) {
+        this(port, mode, windowSize, NetworkHeader.MAX_PAYLOAD_SIZE);
+    }
+
+    /**
+     * Receiver constructor for a given retransmission mode and largest payload size
+     * 
+     * @param port:           Port number that Receiver will receive and send messages on
+     * @param mode:           Retransmission mode the Sender uses
+     * @param windowSize:     Window size the Sender uses
+     * @param maxPayloadSize: Largest payload size accepted when a Sender proposes one
+     */
+    public Receiver(int port, WindowMode mode, int windowSize, int maxPayloadSize) {
         this._port = port;
+        this._mode = mode;
+        this._windowSize = windowSize;
+        this._maxPayloadSize = maxPayloadSize;
+        this._receivePacket = this.newPacket();
+
+        // Removed again by closeSocket()
+        String labels = Metrics.instance("receiver", port);
+        Metrics.gauge("rdt_receiver_goodput_bytes_per_second", "Payload bytes delivered per second since the first session opened", labels, this::goodput);
+        Metrics.gauge("rdt_receiver_sessions", "Open sessions", labels, () -> this._sessionCount.get());
+    }
+
+    /**
+     * @return - Payload bytes delivered per second by every session since the first one opened, 0 before that
+     */
+    public double goodput(){
+        long elapsed = System.nanoTime() - this._firstSessionAt;
+        if (this._firstSessionAt == 0 || elapsed <= 0){
+            return 0;
+        }
+        return ReceiverSession.BYTES_DELIVERED.sum() * 1e9 / elapsed;
     }
 
     
+    /**
+     * Writes every delivered message to a stream instead of printing it.  Concurrent transfers interleave in the stream
+     * 
+     * @param output: Stream the messages are appended to
+     * @param name:   Name of the output shown in the log
+     */
+    public void setOutput(OutputStream output, String name){
+        this.setOutput(output, null, name);
+    }
+
+    /**
+     * Writes every delivered message to a file instead of printing it.  Messages of announced length are mapped into the file
+     * 
+     * @param output:  Stream the messages are appended to
+     * @param channel: File the stream writes through to, see openOutputFile
+     * @param name:    Name of the output shown in the log
+     */
+    public void setOutput(OutputStream output, FileChannel channel, String name){
+        this._output = output;
+        this._outputChannel = channel;
+        this._outputName = name;
+    }
+
+    /**
+     * Creates, or truncates, an output file open for mapping
+     * 
+     * @param path: Path of the file
+     * @return      The open file
+     * @throws IOException If the file cannot be opened
+     */
+    public static FileChannel openOutputFile(String path) throws IOException {
+        return FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes the messages of each connection to its own file, connection-<connection ID>.out, in a directory
+     * 
+     * @param directory: Directory the files are created in
+     */
+    public void setOutputDirectory(File directory){
+        this._outputDirectory = directory;
+    }
+
+    /**
+     * Sets the transport createSocket() opens
+     * 
+     * @param kind: UDP, or the in-memory transport of this JVM
+     */
+    public void setTransport(Transport.Kind kind){
+        this._transportKind = kind;
+    }
+
+    /**
+     * Sets when in-order segments are ACKed.  Stop-and-wait always ACKs every segment at once
+     * 
+     * @param ackEvery:    ACK after this many segments
+     * @param delayMillis: ACK no later than this many milliseconds after the first segment not ACKed yet
+     */
+    public void setDelayedAcks(int ackEvery, int delayMillis){
+        this._ackEvery = ackEvery;
+        this._ackDelayMillis = delayMillis;
+    }
+
+    /**
+     * Sets how many threads handle sessions.  With one, segments are handled on the thread calling run()
+     * 
+     * @param workerCount: Number of worker threads
+     */
+    public void setWorkers(int workerCount){
+        this._workerCount = workerCount;
+    }
+
+    /**
+     * Limits the sessions held at once
+     * 
+     * @param maxSessions:    Most sessions open at once, SYNs of further connections are ignored
+     * @param timeoutSeconds: Seconds without a segment after which a session is closed
+     */
+    public void setSessionLimits(int maxSessions, int timeoutSeconds){
+        this._maxSessions = maxSessions;
+        this._sessionTimeoutNanos = timeoutSeconds * 1000000000L;
+    }
+
+    /**
+     * Limits the length a SYN may announce when messages are written to a file, which is extended to that length before data arrives
+     * 
+     * @param maxLength: Largest message length in bytes, SYNs announcing more are not ACKed
+     */
+    public void setMaxMessageLength(long maxLength){
+        this._maxMessageLength = maxLength;
+    }
+
+    public WindowMode mode(){
+        return this._mode;
+    }
+
+    public long sessionTimeoutNanos(){
+        return this._sessionTimeoutNanos;
+    }
+
     /**
      * Establishes a datagram socket to bind the specified port to
      * 
@@ -46,9 +247,9 @@ public class Receiver {
      */
     public int createSocket() {
         try {
-            this._socket = new DatagramSocket(this._port);
-        } catch (SocketException e){
-            System.err.println("Unable to create and bind to socket");
+            this._socket = Transport.open(this._transportKind, this._port);
+        } catch (IOException e){
+            Log.error("Unable to create and bind to socket");
             return -1;
         }
         return 0;
@@ -56,15 +257,29 @@ public class Receiver {
 
 
     /**
-     * Closes open datagram socket
+     * Closes open datagram socket and removes the Receiver's gauges
      * 
      * @return - 0, if no error; otherwise, a negative number indicating the error
      */
     public int closeSocket() {
-        this._socket.close();
+        Metrics.removeGauges(Metrics.instance("receiver", this._port));
+        try {
+            this._socket.close();
+        } catch (IOException e){
+            Log.error("Error: Unable to close socket");
+            return -1;
+        }
         return 0;
     }
 
+    /**
+     * Stops the receive loop from another thread by closing the socket it waits on
+     */
+    public void stop() {
+        this._continueService = false;
+        this.closeSocket();
+    }
+
 
     /**
      * Displays the reponse given to the receiver
@@ -72,125 +287,216 @@ public class Receiver {
      * @param response - the reponse as a string 
      */
     public void printResponse(String response){
-        System.out.println("FROM SERVER: " + response);
+        Log.info("FROM SERVER: " + response);
     }
 
-     /**
-     * Calls on the utility class to create the network header and datagram packet to send to the Network
+    /**
+     * Opens the session of a new connection, unless too many are open.  Called by the worker the connection is hashed to
      * 
-     * @param srcIP         - IP address of Source sending response
-     * @param srcPort       - Port number of Source sending response
-     * @param destIP        - IP address of where response should be sent
-     * @param destPort      - Port of where response should be sent
-     * @param networkIP     - IP address of Network
-     * @param networkPort   - Port number of Network
-     * @param seqNum        - Sequence number of response
-     * @param checksum      - Checksum byte of response
-     * @return              - 0, if no errors; otherwise, non-zero value indicates error
+     * @param connectionId - Connection ID carried by the connection's SYN
+     * @return             - New session; otherwise, null if it could not be opened
      */
-    public int sendResponse(String srcIP, String srcPort, String destIP, String destPort, String networkIP, String networkPort, String seqNum, String checksum){
-
-        // Create network header for packet and the actual datagram packet itself
-        String networkHeader = this.utility.createNetworkHeader(networkIP, Integer.toString(this._port), destIP, destPort, seqNum + checksum + "ACK" + seqNum);
-
-        DatagramPacket packet = this.utility.createDatagramPacket(networkHeader, networkIP, networkPort, BUFFER_SIZE);
+    public ReceiverSession openSession(int connectionId){
+        if (this._sessionCount.incrementAndGet() > this._maxSessions){
+            this._sessionCount.decrementAndGet();
+            SESSIONS_REJECTED.increment();
+            Log.error("Error: " + this._maxSessions + " sessions open, connection " + Integer.toHexString(connectionId) + " refused");
+            return null;
+        }
 
-        if(packet != null) {
+        ReceiverSession session = new ReceiverSession(connectionId, this._socket, this._mode, this._windowSize, this._maxPayloadSize,
+                                                      this._ackEvery, this._ackDelayMillis, this._maxMessageLength);
+        if (this._outputDirectory != null){
+            File file = new File(this._outputDirectory, "connection-" + Integer.toHexString(connectionId) + ".out");
             try {
-                // Call underlying UDP send method
-                this._socket.send(packet);
-                System.out.println("Receiver's Response: " + networkHeader);
+                FileChannel channel = openOutputFile(file.getPath());
+                session.setOutput(new BufferedOutputStream(Channels.newOutputStream(channel)), channel, file.getPath(), true);
             } catch (IOException e) {
-                System.err.println("Error: Failed to send message");
-                return -1;
+                Log.error("Error: Unable to open " + file.getPath());
+                this._sessionCount.decrementAndGet();
+                return null;
             }
-            return 0;        
+        } else if (this._output != null){
+            session.setOutput(this._output, this._outputChannel, this._outputName, false);
+        }
+
+        if (this._firstSessionAt == 0){
+            this._firstSessionAt = System.nanoTime();
         }
-        System.err.println("Error: Failed to create message");
-        return -1;
+        SESSIONS_OPENED.increment();
+        Log.info("Session " + Integer.toHexString(connectionId) + " opened");
+        return session;
+    }
+
+    /**
+     * Releases a session a worker has dropped
+     * 
+     * @param session - Session that was expired or is closing with its worker
+     */
+    public void closeSession(ReceiverSession session){
+        session.close();
+        this._sessionCount.decrementAndGet();
+    }
+
+    /**
+     * @return - Empty datagram large enough for the largest accepted segment
+     */
+    private DatagramPacket newPacket(){
+        // A SYN's payload holds the message length, however small the segments are
+        byte[] buffer = new byte[NetworkHeader.HEADER_SIZE + Math.max(this._maxPayloadSize, NetworkHeader.MESSAGE_LENGTH_SIZE)];
+        return new DatagramPacket(buffer, buffer.length);
+    }
+
+    /**
+     * Takes a datagram to receive the next segment into, allocating up to POOL_SIZE of them as needed
+     * 
+     * @return - Datagram, or null if every one is waiting for a worker
+     */
+    private DatagramPacket acquirePacket(){
+        DatagramPacket packet = this._packetPool.poll();
+        if (packet == null && this._packetsAllocated < POOL_SIZE){
+            this._packetsAllocated++;
+            packet = this.newPacket();
+        }
+        return packet;
+    }
+
+    /**
+     * Gives back a datagram once a worker is done with it
+     * 
+     * @param packet - Datagram taken by acquirePacket()
+     */
+    public void releasePacket(DatagramPacket packet){
+        this._packetPool.offer(packet);
     }
 
 
     /**
      * Receives client request by calling upon underlying UDP protocol
-     * @return - datagram containing the client request
+     * @param packet - Datagram to receive the request into
+     * @return       - Datagram containing the client request, or null if none arrived before the socket timeout
      */
-    public DatagramPacket receiveRequest() {
-        byte[] buffer = new byte[BUFFER_SIZE];
-        DatagramPacket packetToReceive = new DatagramPacket(buffer, BUFFER_SIZE);
+    public DatagramPacket receiveRequest(DatagramPacket packet) {
+        packet.setLength(packet.getData().length);
 
         try {
             // Call to underlying UDP receive method
-            this._socket.receive(packetToReceive);
+            this._socket.receive(packet);
+        } catch (SocketTimeoutException e){
+            // A delayed ACK is due
+            return null;
         } catch (IOException e){
-            System.err.println("Unable to receive message from client");
+            if (this._continueService){
+                Log.error("Unable to receive message from client");
+            }
             return null;
         }
 
-        return packetToReceive;
+        // Closing the socket from stop() can end a blocked receive with an empty datagram instead of an exception
+        if (!this._continueService){
+            return null;
+        }
+        return packet;
+    }
+
+    /**
+     * Sets how long the socket waits for the next segment, only when it changes
+     * @param timeoutMillis - Milliseconds to wait, 0 to wait forever
+     */
+    private void setSocketTimeout(int timeoutMillis){
+        if (timeoutMillis == this._socketTimeout){
+            return;
+        }
+        try {
+            this._socket.setTimeout(timeoutMillis);
+            this._socketTimeout = timeoutMillis;
+        } catch (IOException e) {
+            Log.error("Error: Unable to set the socket timeout");
+        }
     }
 
-   
     /**
      * Server will listen for requests and generate responses until a <shutdown/> message is passed
      */
     public void run() {
-        ArrayList<String> messagesBuffer = new ArrayList<String>();        
         this._continueService = true;
 
-        while (this._continueService){
-            System.out.println("Receiver listening on port " + this._socket.getLocalPort());
-
-            DatagramPacket newDatagramPacket = this.receiveRequest();
-            System.out.println("Host IP: " + newDatagramPacket.getAddress());
-            System.out.println("Host Name: " + newDatagramPacket.getAddress().getHostName());
-
-            String request = new String(newDatagramPacket.getData());
-            HashMap<String, String> networkHeaderPortions = utility.parseNetworkHeader(request);
-
-
-            String message = networkHeaderPortions.get("message").substring(3);
-
-
-            System.out.println("Sender IP: " + networkHeaderPortions.get("srcIP"));
-            System.out.println("Sender Request: " + message);
+        // Start the workers.  With one worker, segments are handled on this thread without a hand-off
+        this._workers = new ReceiverWorker[this._workerCount];
+        for (int i = 0; i < this._workerCount; i++){
+            this._workers[i] = new ReceiverWorker(i, this);
+        }
+        if (this._workerCount > 1){
+            this._packetPool = new ArrayBlockingQueue<DatagramPacket>(POOL_SIZE);
+            this._sparePacket = this.newPacket();
+            this._workerThreads = new Thread[this._workerCount];
+            for (int i = 0; i < this._workerCount; i++){
+                this._workerThreads[i] = new Thread(this._workers[i]);
+                this._workerThreads[i].start();
+            }
+        }
+        Log.info("Receiver listening on port " + this._socket.localPort() + " with " + this._workerCount + " worker(s)");
 
-            System.out.println("");
+        while (this._continueService){
+            if (this._workerCount == 1){
+                // Send the delayed ACKs once they are due, and wait for the next segment no longer than that
+                this.setSocketTimeout(this._workers[0].serviceTimers());
+                DatagramPacket packet = this.receiveRequest(this._receivePacket);
+                if (packet != null){
+                    this._workers[0].process(packet);
+                }
+                continue;
+            }
 
+            DatagramPacket packet = this.acquirePacket();
+            boolean pooled = (packet != null);
+            if (!pooled){
+                packet = this._sparePacket;
+            }
+            if (this.receiveRequest(packet) == null){
+                if (pooled){
+                    this.releasePacket(packet);
+                }
+                continue;
+            }
 
-            // Message does not exist in message buffer yet, add it
-            if (!messagesBuffer.contains(message)){
-                messagesBuffer.add(message);
+            // Every datagram is waiting for a worker, so there is nowhere to keep this one
+            if (!pooled){
+                SEGMENTS_POOL_DROPPED.increment();
+                Log.error("Error: Out of datagrams, segment dropped");
+                continue;
             }
 
-            // The term byte is set active and the final message should be printed
-            if (networkHeaderPortions.get("message").charAt(2) == '1'){
-                System.out.print("FINAL MESSAGE: ");
-                for (String segment : messagesBuffer){
-                    System.out.print(segment);
-                }
-                System.out.println("");
-                messagesBuffer = new ArrayList<String>();
+            // Too short to hold a connection ID, the worker would find it corrupt anyway
+            if (packet.getLength() < NetworkHeader.HEADER_SIZE){
+                ReceiverWorker.SEGMENTS_CORRUPT.increment();
+                this.releasePacket(packet);
+                continue;
             }
 
+            // Every segment of a connection goes to the same worker, which keeps the connection in order
+            int connectionId = this._receiveHeader.wrap(packet.getData()).connection();
+            ReceiverWorker worker = this._workers[Math.floorMod(connectionId, this._workerCount)];
+            if (worker.enqueue(packet) < 0){
+                Log.error("Error: Worker queue full, segment dropped");
+                this.releasePacket(packet);
+            }
+        }
 
-            if (request != null) {
-                
-                // Shudown message was passed to receiver
-                if (message == "STOP"){
-                    this._continueService = false;
+        if (this._workerThreads != null){
+            for (Thread thread : this._workerThreads){
+                thread.interrupt();
+            }
+            for (Thread thread : this._workerThreads){
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-                this.sendResponse(networkHeaderPortions.get("destIP"),
-                                  networkHeaderPortions.get("destPort"),
-                                  networkHeaderPortions.get("srcIP"),
-                                  networkHeaderPortions.get("srcPort"),
-                                  newDatagramPacket.getAddress().getHostAddress(),
-                                  Integer.toString(newDatagramPacket.getPort()),
-                                  String.valueOf(networkHeaderPortions.get("message").charAt(0)),
-                                  String.valueOf(networkHeaderPortions.get("message").charAt(1)));
             }
+        } else {
+            this._workers[0].closeSessions();
         }
-        
     }
     
 
@@ -200,22 +506,97 @@ public class Receiver {
         String   req;
 
         
-        if (args.length != 1){
-            System.err.println("Missing argument.  Usage: Java Receiver <port number>\n");
+        if (args.length < 1){
+            Log.error("Missing argument.  Usage: Java Receiver <port number> [--mode saw|gbn|sr] [--window N] [--max-segment-size bytes] [--output path|-] [--ack-every N] [--ack-delay ms] [--workers N] [--max-sessions N] [--session-timeout s] [--max-message-size bytes] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]\n");
             return;
         }
 
         int portNum;
+        int windowSize;
+        int maxPayloadSize;
+        int ackEvery;
+        int ackDelay;
+        int workers;
+        int maxSessions;
+        int sessionTimeout;
+        long maxMessageLength;
+
+        // Optional sliding window settings, must match the Sender's.  Defaults to stop-and-wait
+        HashMap<String, String> options = new Utility().parseOptions(args, 1);
+        if (options == null || Log.configure(options) < 0 || Metrics.configure(options, "receiver") < 0){
+            return;
+        }
+        WindowMode mode = WindowMode.fromName(options.getOrDefault("mode", "saw"));
 
-        // Try to parse port number from user argument
+        // Try to parse port number and window size from user arguments
         try {
             portNum = Integer.parseInt(args[0]);
+            windowSize = (mode == WindowMode.STOP_AND_WAIT) ? 1 : Integer.parseInt(options.getOrDefault("window", "8"));
+            maxPayloadSize = Integer.parseInt(options.getOrDefault("max-segment-size", String.valueOf(NetworkHeader.MAX_PAYLOAD_SIZE)));
+            ackEvery = Integer.parseInt(options.getOrDefault("ack-every", "2"));
+            ackDelay = Integer.parseInt(options.getOrDefault("ack-delay", "20"));
+            workers = Integer.parseInt(options.getOrDefault("workers", "1"));
+            maxSessions = Integer.parseInt(options.getOrDefault("max-sessions", "1024"));
+            sessionTimeout = Integer.parseInt(options.getOrDefault("session-timeout", "60"));
+            maxMessageLength = Long.parseLong(options.getOrDefault("max-message-size", String.valueOf(DEFAULT_MAX_MESSAGE_LENGTH)));
         } catch (NumberFormatException e){
-            System.err.println("Invalid argument, must be integer.  Usage: Java Receiver <port number>\n");
+            Log.error("Invalid argument, must be integer.  Usage: Java Receiver <port number> [--mode saw|gbn|sr] [--window N] [--max-segment-size bytes] [--output path|-] [--ack-every N] [--ack-delay ms] [--workers N] [--max-sessions N] [--session-timeout s] [--max-message-size bytes] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]\n");
+            return;
+        }
+
+        if (mode == null || windowSize < 1 || windowSize > WindowMode.MAX_WINDOW_SIZE){
+            Log.error("Error: Mode must be saw, gbn or sr and window size between 1 and " + WindowMode.MAX_WINDOW_SIZE);
+            return;
+        }
+
+        if (maxPayloadSize < 1 || maxPayloadSize > NetworkHeader.MAX_PAYLOAD_SIZE){
+            Log.error("Error: Segment size must be between 1 and " + NetworkHeader.MAX_PAYLOAD_SIZE + " bytes");
             return;
         }
 
-        server = new Receiver(portNum);
+        if (ackEvery < 1 || ackDelay < 0){
+            Log.error("Error: ACK every must be at least 1 and ACK delay at least 0 ms");
+            return;
+        }
+
+        if (workers < 1 || maxSessions < 1 || sessionTimeout < 1){
+            Log.error("Error: Workers, max sessions and session timeout must be at least 1");
+            return;
+        }
+
+        if (maxMessageLength < 0){
+            Log.error("Error: Max message size must be at least 0 bytes");
+            return;
+        }
+
+        server = new Receiver(portNum, mode, windowSize, maxPayloadSize);
+        server.setDelayedAcks(ackEvery, ackDelay);
+        server.setWorkers(workers);
+        server.setSessionLimits(maxSessions, sessionTimeout);
+        server.setMaxMessageLength(maxMessageLength);
+
+        // Optional output for streamed transfers.  "-" writes to stdout, which then also carries the log,
+        // and a directory gets one file per connection
+        String output = options.get("output");
+        OutputStream outputStream = null;
+        if (output != null && new File(output).isDirectory()){
+            server.setOutputDirectory(new File(output));
+        } else if (output != null){
+            FileChannel channel;
+            try {
+                channel = output.equals("-") ? null : openOutputFile(output);
+            } catch (IOException e) {
+                Log.error("Error: Unable to open " + output);
+                return;
+            }
+            outputStream = new BufferedOutputStream((channel == null) ? System.out : Channels.newOutputStream(channel));
+            server.setOutput(outputStream, channel, output);
+
+            // Keep the log out of the delivered bytes
+            if (output.equals("-")){
+                Log.redirectToStderr();
+            }
+        }
 
         // Error while creating socket
         if (server.createSocket() < 0){
@@ -224,5 +605,13 @@ public class Receiver {
 
         server.run();
         server.closeSocket();
+
+        if (outputStream != null){
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                Log.error("Error: Unable to close " + output);
+            }
+        }
     }
 }
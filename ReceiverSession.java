@@ -0,0 +1,382 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the state the Receiver keeps for one connection: its reassembly buffer, the message in progress,
+* the delayed ACK and the addresses ACKs go back to.  Every Sender picks a random connection ID that all its segments carry,
+* so the segments of Senders talking to the Receiver at the same time are never mixed up.
+* A session is only ever used by the ReceiverWorker its connection ID hashes to, so it needs no locking.
+* When the output is a file and a SYN announces the message length, the session reserves a region of that length in the file, maps it
+* and has every segment written straight to its offset in the mapping; other messages are written through the output stream.
+* A SYN announcing more than the Receiver's maximum message length is not ACKed, so no file is ever extended past it.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: ReceiverSession.java
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.LongAdder;
+
+// ReceiverSession class
+public class ReceiverSession {
+    // Metrics shared by every session
+    private static final LongAdder SEGMENTS_DUPLICATE = Metrics.counter("rdt_receiver_segments_duplicate_total", "Segments already delivered or buffered");
+    private static final LongAdder SEGMENTS_DISCARDED = Metrics.counter("rdt_receiver_segments_discarded_total", "Segments out of order (Go-Back-N), beyond the window or too large");
+    private static final LongAdder ACKS_SENT = Metrics.counter("rdt_receiver_acks_sent_total", "ACKs sent");
+    private static final LongAdder ACKS_DELAYED = Metrics.counter("rdt_receiver_acks_delayed_total", "ACKs sent when the delayed ACK timer expired");
+    private static final LongAdder SACK_BLOCKS = Metrics.counter("rdt_receiver_sack_blocks_total", "SACK blocks sent in ACKs");
+    public static final LongAdder BYTES_DELIVERED = Metrics.counter("rdt_receiver_bytes_delivered_total", "Payload bytes delivered in order");
+    private static final LongAdder MESSAGES = Metrics.counter("rdt_receiver_messages_total", "Messages delivered completely");
+    private static final Metrics.Histogram MESSAGE_TIME = Metrics.histogram("rdt_receiver_message_seconds", "Time from a message's SYN to the delivery of its final segment");
+
+    private final int           _connectionId;
+    private final Transport     _socket;            // Receiver's transport, ACKs are sent on it
+
+    private final WindowMode    _mode;              // Retransmission mode agreed with the Sender
+    private final int           _windowSize;        // Number of segments the Sender may have in flight
+    private final int           _maxPayloadSize;    // Largest payload size the Receiver accepts
+    private final long          _maxMessageLength;  // Largest announced message length mapped into the output file
+    private int                 _payloadSize;       // Payload size agreed with the Sender for the current message, carried in every ACK
+    private boolean             _inMessage;         // True between a message's SYN segment and the delivery of its final segment
+    private boolean             _failed;            // True once delivered bytes could not be written
+
+    // Delayed ACKs.  In-order segments are ACKed once every _ackEvery segments or _ackDelayMillis after the first one not ACKed yet
+    private final int           _ackEvery;
+    private final int           _ackDelayMillis;
+    private int                 _unackedSegments;   // Segments received since the last ACK
+    private long                _ackDeadline;       // System.nanoTime() when the delayed ACK is due
+    private boolean             _ackNow;            // Set by receiveSegment when the ACK must not wait
+    private final int[]         _sackBlocks = new int[2 * NetworkHeader.MAX_SACK_BLOCKS];
+
+    // Addresses of the last intact segment, where the next ACK goes
+    private int                 _senderIP;
+    private int                 _senderPort;
+    private int                 _localIP;
+    private int                 _localPort;
+    private InetAddress         _networkAddress;
+    private int                 _networkPort;
+    private long                _lastActivity;      // System.nanoTime() when the last intact segment arrived
+
+    // Segments of the current message indexed by sequence number, one receive window of them at most
+    private final ReassemblyBuffer _reassembly;
+    private OutputStream        _output;            // Where messages are written, or null to print them
+    private FileChannel         _outputChannel;     // File the output stream writes to, or null if it is not a file
+    private String              _outputName;
+    private boolean             _ownsOutput;        // True if the output is this session's own file, closed with the session
+    private long                _messageStartedAt;  // System.nanoTime() when the current message's SYN arrived
+
+    // Network header and packet every ACK is built in
+    private final NetworkHeader _sendHeader = new NetworkHeader().wrap(new byte[NetworkHeader.MAX_ACK_SIZE]);
+    private final DatagramPacket _sendPacket = new DatagramPacket(new byte[0], 0);
+    private final Utility       utility = new Utility();
+
+    /**
+     * Creates the state of a new connection
+     * @param connectionId   - Connection ID chosen by the Sender
+     * @param socket         - Transport ACKs are sent on
+     * @param mode           - Retransmission mode the Sender uses
+     * @param windowSize     - Window size the Sender uses
+     * @param maxPayloadSize - Largest payload size accepted when the Sender proposes one
+     * @param ackEvery       - ACK in-order segments after this many of them
+     * @param ackDelayMillis - ACK in-order segments no later than this many milliseconds after the first one not ACKed yet
+     * @param maxMessageLength - Largest message length a SYN may announce when the output is a file
+     */
+    public ReceiverSession(int connectionId, Transport socket, WindowMode mode, int windowSize, int maxPayloadSize,
+                           int ackEvery, int ackDelayMillis, long maxMessageLength) {
+        this._connectionId = connectionId;
+        this._socket = socket;
+        this._mode = mode;
+        this._windowSize = windowSize;
+        this._maxPayloadSize = maxPayloadSize;
+        this._maxMessageLength = maxMessageLength;
+        this._ackEvery = (mode == WindowMode.STOP_AND_WAIT) ? 1 : ackEvery;
+        this._ackDelayMillis = ackDelayMillis;
+        this._reassembly = new ReassemblyBuffer(windowSize);
+        this._lastActivity = System.nanoTime();
+    }
+
+    /**
+     * Writes every delivered message to a stream instead of printing it
+     * @param output  - Stream the messages are appended to
+     * @param channel - File the stream writes through to, messages of announced length are mapped into it; otherwise, null
+     * @param name    - Name of the output shown in the log
+     * @param owned   - True if the stream belongs to this session and is closed with it
+     */
+    public void setOutput(OutputStream output, FileChannel channel, String name, boolean owned){
+        this._output = output;
+        this._outputChannel = channel;
+        this._outputName = name;
+        this._ownsOutput = owned;
+        this._reassembly.setSink(output);
+    }
+
+    public int connectionId(){
+        return this._connectionId;
+    }
+
+    /**
+     * @return - System.nanoTime() when the last intact segment arrived
+     */
+    public long lastActivity(){
+        return this._lastActivity;
+    }
+
+    /**
+     * @return - True if delivered bytes could not be written
+     */
+    public boolean failed(){
+        return this._failed;
+    }
+
+    /**
+     * @return - True while in-order segments wait for the delayed ACK
+     */
+    public boolean ackPending(){
+        return this._unackedSegments > 0;
+    }
+
+    /**
+     * @return - System.nanoTime() when the delayed ACK is due, if one is pending
+     */
+    public long ackDeadline(){
+        return this._ackDeadline;
+    }
+
+    /**
+     * Handles an intact segment of this connection and sends its ACK, at once or once the delayed ACK is due
+     * @param header         - Network header viewing the segment, its checksum already verified
+     * @param networkAddress - IP address of the Network the segment came through
+     * @param networkPort    - Port number of the Network
+     * @return               - True if an ACK started waiting for the delayed ACK timer
+     */
+    public boolean receive(NetworkHeader header, InetAddress networkAddress, int networkPort){
+        this._senderIP = header.srcIP();
+        this._senderPort = header.srcPort();
+        this._localIP = header.destIP();
+        this._localPort = header.destPort();
+        this._networkAddress = networkAddress;
+        this._networkPort = networkPort;
+        this._lastActivity = System.nanoTime();
+
+        // ACKs are cumulative, so one ACK covers every segment received since the last one
+        if (!this.receiveSegment(header)){
+            return false;
+        }
+        this._unackedSegments++;
+        if (this._ackNow || this._unackedSegments >= this._ackEvery){
+            this.sendAck();
+            return false;
+        }
+        if (this._unackedSegments == 1){
+            this._ackDeadline = this._lastActivity + this._ackDelayMillis * 1000000L;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Handles an intact segment and delivers payloads in order.  Stop-and-wait is handled as a window of one segment
+     * @param header - Network header viewing the received segment, its checksum already verified
+     * @return       - True if the segment is to be ACKed, at once if _ackNow is set
+     */
+    private boolean receiveSegment(NetworkHeader header){
+        int seq = header.seq();
+        int offset = this._reassembly.offset(seq);
+
+        // Between messages only a SYN segment starts the next one.  Retransmissions of the
+        // previous message's last segments are ACKed again in case their ACKs were lost
+        if (!this._inMessage){
+            if (offset < 0 && offset >= -this._windowSize){
+                return this.acknowledge(true);
+            }
+            if (!header.isSyn() || header.ack() < 1){
+                return false;
+            }
+
+            // The output file is extended to the announced length before any data arrives, so a length past the limit is refused
+            long messageLength = header.messageLength();
+            if (messageLength > this._maxMessageLength && this._outputChannel != null){
+                SEGMENTS_DISCARDED.increment();
+                Log.error("Error: Message of " + messageLength + " bytes on connection " + Integer.toHexString(this._connectionId) +
+                          " exceeds the maximum of " + this._maxMessageLength + " bytes, SYN refused");
+                return false;
+            }
+
+            // The SYN carries no data and proposes the Sender's payload size, accept up to our own maximum.
+            // A message of announced length is received straight into a mapped region of the output file
+            this._payloadSize = Math.min(header.ack(), this._maxPayloadSize);
+            this._inMessage = true;
+            this._messageStartedAt = System.nanoTime();
+            MappedFile target = (messageLength >= 0 && this._outputChannel != null) ? this.mapOutput(messageLength) : null;
+            this._reassembly.reset(seq + 1, this._payloadSize, target);
+            Log.info("New message on connection " + Integer.toHexString(this._connectionId) + ", payload size: " + this._payloadSize);
+            return this.acknowledge(true);
+        }
+
+        // Go-Back-N: out of order segment is discarded and the last in-order segment is ACKed again
+        if (this._mode == WindowMode.GO_BACK_N && offset != 0){
+            if (offset < 0){
+                SEGMENTS_DUPLICATE.increment();
+            } else {
+                SEGMENTS_DISCARDED.increment();
+            }
+            return this.acknowledge(true);
+        }
+
+        int result = this._reassembly.insert(header);
+
+        // Segment was already delivered or buffered but its ACK was lost, ACK it again
+        if (result == ReassemblyBuffer.DUPLICATE){
+            SEGMENTS_DUPLICATE.increment();
+            PacketTrace.record(PacketTrace.DUPLICATE, header);
+            return offset >= -this._windowSize ? this.acknowledge(true) : false;
+        }
+        if (result == ReassemblyBuffer.TOO_LARGE || result == ReassemblyBuffer.OUT_OF_WINDOW){
+            SEGMENTS_DISCARDED.increment();
+        }
+        if (result == ReassemblyBuffer.TOO_LARGE){
+            Log.error("Error: Segment payload of " + header.length() + " bytes is too large");
+            return false;
+        }
+        if (result == ReassemblyBuffer.OUT_OF_WINDOW){
+            return false;
+        }
+
+        PacketTrace.record(PacketTrace.DELIVERED, header);
+        int delivered = this.deliverSegments();
+
+        // Only a segment arriving in order with nothing buffered behind it may wait for the delayed ACK.
+        // A gap, a filled gap or the end of the message is reported at once
+        return this.acknowledge(offset != 0 || delivered != 1 || this._reassembly.buffered() > 0 || !this._inMessage);
+    }
+
+    /**
+     * Reserves a region for a message at the end of the output file and maps it
+     * @param length - Bytes in the message
+     * @return       - Mapped region; otherwise, null if it could not be mapped and the message goes through the stream
+     */
+    private MappedFile mapOutput(long length){
+        // Bytes still buffered in the stream go first.  The stream's lock keeps a session sharing the file from writing in between
+        synchronized (this._output) {
+            try {
+                this._output.flush();
+                long position = this._outputChannel.position();
+                MappedFile region = new MappedFile(this._outputChannel, FileChannel.MapMode.READ_WRITE, position, length, this._payloadSize);
+                this._outputChannel.position(position + length);
+                return region;
+            } catch (IOException e) {
+                Log.error("Error: Unable to map " + this._outputName + ", writing the message through the stream");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Records whether the ACK owed for a segment must be sent at once
+     * @param now - True if the ACK may not be delayed
+     * @return    - Always true, so callers can return it directly
+     */
+    private boolean acknowledge(boolean now){
+        this._ackNow = now;
+        return true;
+    }
+
+    /**
+     * Delivers the segments that are now in order and prints the message once its final segment is delivered
+     * @return - Number of segments delivered; otherwise, -1 if they could not be written
+     */
+    private int deliverSegments(){
+        long before = this._reassembly.messageBytes();
+        int delivered = this._reassembly.deliver();
+        if (delivered < 0){
+            this._failed = true;
+            return -1;
+        }
+        BYTES_DELIVERED.add(this._reassembly.messageBytes() - before);
+
+        // The term flag is set and the final message should be printed
+        if (this._reassembly.isComplete()){
+            MESSAGES.increment();
+            MESSAGE_TIME.record(System.nanoTime() - this._messageStartedAt);
+            if (this._outputName != null){
+                Log.info("FINAL MESSAGE: " + this._reassembly.messageBytes() + " bytes written to " + this._outputName);
+            } else {
+                Log.info("FINAL MESSAGE: " + this._reassembly.messageString());
+            }
+            this._inMessage = false;
+        }
+        return delivered;
+    }
+
+    /**
+     * Sends the ACK that waited for the delayed ACK timer
+     * @return - 0, if no errors; otherwise, non-zero value indicates error
+     */
+    public int sendDelayedAck(){
+        ACKS_DELAYED.increment();
+        return this.sendAck();
+    }
+
+    /**
+     * Sends the cumulative ACK to the Sender of the last intact segment, covering every segment received since the last ACK
+     * @return - 0, if no errors; otherwise, non-zero value indicates error
+     */
+    public int sendAck(){
+        this._unackedSegments = 0;
+        if (this._senderPort == 0){
+            return 0;
+        }
+
+        // Selective Repeat lists the runs of segments held beyond the gap, so the Sender only resends what is missing
+        int blocks = 0;
+        if (this._inMessage && this._mode == WindowMode.SELECTIVE_REPEAT){
+            blocks = this._reassembly.sackBlocks(this._sackBlocks, NetworkHeader.MAX_SACK_BLOCKS);
+        }
+
+        // ACKs carry no data but SACK blocks, their SEQ field tells the Sender the agreed payload size
+        // and their ACK field is the sequence number of the last segment delivered in order
+        this._sendHeader.set(this._localIP, this._localPort, this._senderIP, this._senderPort,
+                             this._payloadSize, this._reassembly.base() - 1, NetworkHeader.FLAG_ACK,
+                             blocks * NetworkHeader.SACK_BLOCK_SIZE, this._connectionId);
+        for (int i = 0; i < blocks; i++){
+            this._sendHeader.putSackBlock(i, this._sackBlocks[2 * i], this._sackBlocks[2 * i + 1]);
+        }
+        this._sendHeader.updateChecksum();
+        SACK_BLOCKS.add(blocks);
+
+        DatagramPacket packet = this.utility.fillDatagramPacket(this._sendPacket, this._sendHeader, this._networkAddress, this._networkPort);
+
+        try {
+            // Call underlying UDP send method
+            this._socket.send(packet);
+            ACKS_SENT.increment();
+            PacketTrace.record(PacketTrace.SENT, this._sendHeader);
+            if (Log.isEnabled(Log.DEBUG)){
+                Log.debug("Receiver's Response: " + this._sendHeader);
+            }
+        } catch (IOException e) {
+            Log.error("Error: Failed to send message");
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Releases the session's own output file, if it has one
+     */
+    public void close(){
+        if (!this._ownsOutput){
+            return;
+        }
+        try {
+            this._output.close();
+        } catch (IOException e) {
+            Log.error("Error: Unable to close " + this._outputName);
+        }
+    }
+}
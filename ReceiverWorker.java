@@ -0,0 +1,256 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines a worker of the Receiver, which owns the sessions of the connections hashed to it.
+* The Receiver hashes every segment's connection ID to one worker, so all segments of a connection are handled by the same thread
+* in the order they arrived and a session is never shared between threads.  A worker also sends the delayed ACKs of its sessions
+* once they are due and closes sessions that have been idle longer than the session timeout, or whose message could not be written.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: ReceiverWorker.java
+*/
+
+import java.net.DatagramPacket;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// ReceiverWorker class
+public class ReceiverWorker implements Runnable {
+    private static final int QUEUE_CAPACITY = 4096;             // Segments waiting for the worker before new ones are dropped
+    private static final long EXPIRY_INTERVAL_NANOS = 1000000000L;  // How often idle sessions are looked for
+
+    // Metrics shared by every worker.  SEGMENTS_QUEUE_DROPPED is counted by the Receiver's reading thread, the rest by the workers
+    public static final LongAdder SEGMENTS_RECEIVED = Metrics.counter("rdt_receiver_segments_received_total", "Intact segments received");
+    public static final LongAdder SEGMENTS_CORRUPT = Metrics.counter("rdt_receiver_segments_corrupt_total", "Segments that failed their checksum");
+    public static final LongAdder SEGMENTS_UNKNOWN = Metrics.counter("rdt_receiver_segments_unknown_connection_total", "Segments of no open session that were not a SYN");
+    public static final LongAdder SEGMENTS_QUEUE_DROPPED = Metrics.counter("rdt_receiver_segments_queue_dropped_total", "Segments dropped because their worker's queue was full");
+    public static final LongAdder SESSIONS_EXPIRED = Metrics.counter("rdt_receiver_sessions_expired_total", "Sessions closed after the session timeout");
+    public static final LongAdder SESSIONS_FAILED = Metrics.counter("rdt_receiver_sessions_failed_total", "Sessions closed because their message could not be written");
+
+    private final int               _index;         // Index of the worker, used in its thread name
+    private final Receiver          _receiver;      // Receiver the worker belongs to, opens sessions and takes back packets
+
+    private final ArrayBlockingQueue<DatagramPacket> _queue = new ArrayBlockingQueue<DatagramPacket>(QUEUE_CAPACITY);
+    private final NetworkHeader     _header = new NetworkHeader();
+
+    // Sessions of the connections hashed to this worker.  Concurrent only so the Receiver can count them while the worker runs
+    private final ConcurrentHashMap<Integer, ReceiverSession> _sessions = new ConcurrentHashMap<Integer, ReceiverSession>();
+    private ReceiverSession         _lastSession;   // Session of the last segment, so a single transfer skips the map lookup
+    private final ArrayList<ReceiverSession> _pendingAcks = new ArrayList<ReceiverSession>();  // Sessions with a delayed ACK
+    private long                    _nextExpiry = System.nanoTime() + EXPIRY_INTERVAL_NANOS;
+
+    /**
+     * Creates a worker
+     * @param index    - Index of the worker
+     * @param receiver - Receiver the worker belongs to
+     */
+    public ReceiverWorker(int index, Receiver receiver) {
+        this._index = index;
+        this._receiver = receiver;
+    }
+
+    /**
+     * @return - Number of open sessions
+     */
+    public int sessionCount(){
+        return this._sessions.size();
+    }
+
+    /**
+     * Hands a segment to the worker's thread.  Called by the Receiver's reading thread
+     * @param packet - Datagram holding the segment
+     * @return       - 0, if the segment was queued and the worker now owns the packet; otherwise, -1 when the worker is too far behind
+     *                 and the caller keeps the packet
+     */
+    public int enqueue(DatagramPacket packet){
+        if (!this._queue.offer(packet)){
+            SEGMENTS_QUEUE_DROPPED.increment();
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Processes queued segments and sends due ACKs until the thread is interrupted
+     */
+    @Override
+    public void run(){
+        Thread.currentThread().setName("receiver-worker-" + this._index);
+
+        try {
+            while (true){
+                int timeout = this.serviceTimers();
+                DatagramPacket packet = (timeout > 0) ? this._queue.poll(timeout, TimeUnit.MILLISECONDS) : this._queue.take();
+                if (packet != null){
+                    this.process(packet);
+                    this._receiver.releasePacket(packet);
+                }
+            }
+        } catch (InterruptedException e){
+            // Receiver is shutting down
+        }
+        this.closeSessions();
+    }
+
+    /**
+     * Finds the session of a connection
+     * @param connectionId - Connection ID carried by the segment
+     * @return             - Session, or null if the connection has none
+     */
+    private ReceiverSession lookupSession(int connectionId){
+        ReceiverSession session = this._lastSession;
+        if (session == null || session.connectionId() != connectionId){
+            session = this._sessions.get(connectionId);
+            if (session != null){
+                this._lastSession = session;
+            }
+        }
+        return session;
+    }
+
+    /**
+     * Verifies a segment and hands it to the session of its connection, opening one for a SYN of a new connection
+     * @param packet - Datagram holding the segment
+     */
+    public void process(DatagramPacket packet){
+        NetworkHeader header = this._header.wrap(packet.getData());
+
+        // Addresses are logged as numbers, a reverse DNS lookup per packet would stall the Receiver
+        if (Log.isEnabled(Log.DEBUG)){
+            Log.debug("Host IP: " + packet.getAddress().getHostAddress() + " Port: " + packet.getPort());
+            Log.debug("Sender IP: " + NetworkHeader.ipToString(header.srcIP()));
+            Log.debug("Sender Request: " + header.payloadString() + "\n");
+        }
+
+        boolean intact = header.verifyChecksum(packet.getLength());
+        PacketTrace.record(intact ? PacketTrace.RECEIVED : PacketTrace.CORRUPT, header);
+        if (!intact){
+            SEGMENTS_CORRUPT.increment();
+            // Pipelined modes drop corrupted segments and recover them with the Sender's retransmission timer
+            if (this._receiver.mode() != WindowMode.STOP_AND_WAIT){
+                Log.error("Error: Corrupt segment dropped");
+                return;
+            }
+
+            // Stop-and-wait ACKs the last good segment again so the Sender resends.  The header's addresses cannot be
+            // trusted, so the ACK goes to the Sender of the last good segment, if the connection ID survived
+            Log.error("Error: Corruption of packet detected by checksum");
+            ReceiverSession session = (packet.getLength() >= NetworkHeader.HEADER_SIZE) ? this.lookupSession(header.connection()) : null;
+            if (session != null){
+                session.sendAck();
+            }
+            return;
+        }
+        SEGMENTS_RECEIVED.increment();
+
+        ReceiverSession session = this.lookupSession(header.connection());
+        if (session == null){
+            // Only a SYN opens a session, anything else is left over from a closed or expired connection
+            if (!header.isSyn()){
+                SEGMENTS_UNKNOWN.increment();
+                if (Log.isEnabled(Log.DEBUG)){
+                    Log.debug("Segment of unknown connection " + Integer.toHexString(header.connection()) + " dropped");
+                }
+                return;
+            }
+            session = this._receiver.openSession(header.connection());
+            if (session == null){
+                return;
+            }
+            this._sessions.put(header.connection(), session);
+            this._lastSession = session;
+        }
+
+        if (session.receive(header, packet.getAddress(), packet.getPort())){
+            this._pendingAcks.add(session);
+        }
+        // Only the connection whose output failed is given up, the other sessions and the Receiver carry on
+        if (session.failed()){
+            SESSIONS_FAILED.increment();
+            Log.error("Error: Unable to write the message of connection " + Integer.toHexString(session.connectionId()) + ", session closed");
+            this.removeSession(session);
+        }
+    }
+
+    /**
+     * Sends the delayed ACKs that are due and closes idle sessions
+     * @return - Milliseconds until the next delayed ACK or idle check is due; otherwise, 0 if nothing is waiting
+     */
+    public int serviceTimers(){
+        long now = System.nanoTime();
+        long next = Long.MAX_VALUE;
+
+        Iterator<ReceiverSession> pending = this._pendingAcks.iterator();
+        while (pending.hasNext()){
+            ReceiverSession session = pending.next();
+            // The ACK may have gone out early with a later segment
+            if (!session.ackPending()){
+                pending.remove();
+            } else if (session.ackDeadline() - now <= 0){
+                session.sendDelayedAck();
+                pending.remove();
+            } else {
+                next = Math.min(next, session.ackDeadline());
+            }
+        }
+
+        if (this._sessions.isEmpty()){
+            return (next == Long.MAX_VALUE) ? 0 : (int) Math.max(1, (next - now) / 1000000L);
+        }
+        if (now - this._nextExpiry >= 0){
+            this.expireSessions(now);
+            this._nextExpiry = now + EXPIRY_INTERVAL_NANOS;
+        }
+        next = Math.min(next, this._nextExpiry);
+        return (int) Math.max(1, (next - now) / 1000000L);
+    }
+
+    /**
+     * Closes the sessions that received nothing for longer than the session timeout
+     * @param now - Current System.nanoTime()
+     */
+    private void expireSessions(long now){
+        long timeout = this._receiver.sessionTimeoutNanos();
+        Iterator<ReceiverSession> sessions = this._sessions.values().iterator();
+        while (sessions.hasNext()){
+            ReceiverSession session = sessions.next();
+            if (now - session.lastActivity() < timeout){
+                continue;
+            }
+            SESSIONS_EXPIRED.increment();
+            Log.info("Session " + Integer.toHexString(session.connectionId()) + " expired");
+            this.removeSession(session);
+        }
+    }
+
+    /**
+     * Forgets a session and closes it
+     * @param session - Session of this worker
+     */
+    private void removeSession(ReceiverSession session){
+        this._sessions.remove(session.connectionId(), session);
+        this._pendingAcks.remove(session);
+        if (this._lastSession == session){
+            this._lastSession = null;
+        }
+        this._receiver.closeSession(session);
+    }
+
+    /**
+     * Closes every session, once the worker has stopped
+     */
+    public void closeSessions(){
+        for (ReceiverSession session : this._sessions.values()){
+            this._receiver.closeSession(session);
+        }
+        this._sessions.clear();
+        this._pendingAcks.clear();
+        this._lastSession = null;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program estimates the round trip time between the Sender and Receiver and derives the retransmission timeout (RTO) from it.
+* Follows RFC 6298: a smoothed RTT (SRTT) and RTT variation (RTTVAR) are updated from every valid sample and RTO = SRTT + 4 * RTTVAR.
+* Each timeout doubles the RTO (exponential backoff) until a new sample arrives.
+* Samples from retransmitted segments are ambiguous and must not be fed in (Karn's rule), which is left to the caller since only it knows what was resent.
+* The RTO is always clamped between a minimum and a maximum.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: RttEstimator.java
+*/
+
+// RttEstimator class
+public class RttEstimator {
+    public static final long DEFAULT_INITIAL_RTO = 1000;   // Milliseconds before the first sample (RFC 6298)
+    public static final long DEFAULT_MIN_RTO = 10;         // Milliseconds, low enough for a loopback Network
+    public static final long DEFAULT_MAX_RTO = 4000;       // Milliseconds, the fixed timeout used before RTT estimation
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long  _minRto;        // Lower clamp of the RTO in nanoseconds
+    private final long  _maxRto;        // Upper clamp of the RTO in nanoseconds
+    private long        _srtt;          // Smoothed RTT in nanoseconds
+    private long        _rttvar;        // RTT variation in nanoseconds
+    private long        _rto;           // Current retransmission timeout in nanoseconds
+    private boolean     _hasSample;     // False until the first RTT sample arrives
+    private int         _backoffs;      // Number of times the RTO was doubled since the last sample
+
+    /**
+     * Creates an estimator with the default clamps
+     */
+    public RttEstimator() {
+        this(DEFAULT_INITIAL_RTO, DEFAULT_MIN_RTO, DEFAULT_MAX_RTO);
+    }
+
+    /**
+     * Creates an estimator
+     * @param initialRto - RTO in milliseconds to use before the first sample
+     * @param minRto     - Smallest RTO in milliseconds
+     * @param maxRto     - Largest RTO in milliseconds
+     */
+    public RttEstimator(long initialRto, long minRto, long maxRto) {
+        this._minRto = minRto * NANOS_PER_MILLI;
+        this._maxRto = maxRto * NANOS_PER_MILLI;
+        this._rto = this.clamp(initialRto * NANOS_PER_MILLI);
+    }
+
+    /**
+     * Feeds a round trip time measured for a segment that was sent exactly once
+     * @param rttNanos - Time from sending the segment to receiving its ACK, in nanoseconds
+     */
+    public void addSample(long rttNanos){
+        if (!this._hasSample){
+            this._srtt = rttNanos;
+            this._rttvar = rttNanos / 2;
+            this._hasSample = true;
+        } else {
+            // RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R|, SRTT = 7/8 SRTT + 1/8 R
+            this._rttvar += (Math.abs(this._srtt - rttNanos) - this._rttvar) / 4;
+            this._srtt += (rttNanos - this._srtt) / 8;
+        }
+
+        this._backoffs = 0;
+        this._rto = this.clamp(this._srtt + 4 * this._rttvar);
+    }
+
+    /**
+     * Doubles the RTO after a retransmission timer expired
+     */
+    public void backoff(){
+        this._backoffs++;
+        this._rto = this.clamp(this._rto * 2);
+    }
+
+    private long clamp(long rto){
+        return Math.max(this._minRto, Math.min(this._maxRto, rto));
+    }
+
+    /**
+     * @return - Current retransmission timeout in nanoseconds
+     */
+    public long rtoNanos(){
+        return this._rto;
+    }
+
+    /**
+     * @return - Current retransmission timeout in milliseconds, at least 1
+     */
+    public int rtoMillis(){
+        return (int) Math.max(1, this._rto / NANOS_PER_MILLI);
+    }
+
+    /**
+     * @return - Smoothed RTT in nanoseconds, or 0 before the first sample
+     */
+    public long srttNanos(){
+        return this._srtt;
+    }
+
+    /**
+     * @return - Smoothed RTT in milliseconds, or 0 before the first sample
+     */
+    public double srttMillis(){
+        return (double) this._srtt / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return - RTT variation in milliseconds, or 0 before the first sample
+     */
+    public double rttvarMillis(){
+        return (double) this._rttvar / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return - Number of times the RTO was doubled since the last sample
+     */
+    public int backoffs(){
+        return this._backoffs;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("RTO: %d ms SRTT: %.3f ms RTTVAR: %.3f ms", this.rtoMillis(), this.srttMillis(), this.rttvarMillis());
+    }
+}
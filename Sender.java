@@ -3,6 +3,16 @@
 * The sender sends a message to a receiver through a network. 
 * The message is broken into packets and sent one by one. 
 * Sender handles packets loss and corruption by retransmitting the packets until it receives a valid ACK from receiver.
+* Each message starts with a SYN segment that agrees on the payload size with the Receiver (--segment-size, up to about 64 KB).
+* With --file, any binary file or stdin is streamed instead: it is read and segmented on the fly and only the window of segments in flight is kept in memory.
+* A regular file is mapped into memory instead (see MappedFile) and each segment's payload is copied straight from the mapping into its datagram;
+* its SYN announces the file's length, so the Receiver can write the segments straight into a mapped output file.
+* ACKs are cumulative; in Selective Repeat they also list the segments the Receiver holds beyond a gap (SACK), which are then never resent.
+* Three duplicate ACKs trigger a fast retransmit of the missing segments without waiting for the timer.  Stop-and-wait and windows too small
+* to produce three duplicate ACKs for a lost segment ignore duplicate ACKs, as RDT 3.0 does, and only resend when the timer expires.
+* Congestion control (--congestion newreno|cubic|fixed, see CongestionControl) keeps fewer segments than the window in flight while the path is congested.
+* Packets go over UDP, or over the in-memory transport when the Sender runs in one JVM with the Network and Receiver (see Transport and Launcher).
+* Segments sent, retransmissions, timeouts, RTT and ACK latency histograms, cwnd, ssthresh and goodput are published as metrics (see Metrics).
   
 * @authors:   Ben Yanick and Gina  Wittman
 * @date:      08/08/2023
@@ -11,29 +21,110 @@
 * File name: Sender.java
 */
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.atomic.LongAdder;
 
 //Sender class representing the sender application in RDT 3.0 protocol using UDP
 public class Sender {
-    private DatagramSocket      _socket;  // UDP socket used for communication
+    private Transport           _socket;  // Transport used for communication, UDP unless configured
+    private Transport.Kind      _transportKind = Transport.Kind.UDP;
     private int                 _port;    // Sender's port number
     private String receiverIP;
     private String receiverPort;
     private String destIP;
     private String destPort;
-    private static final int SEGMENT_SIZE = 10;   // Fixed size for the segment
-    private static final int BUFFER_SIZE = 54;    // Fixed size for the buffer used in DatagramPacket
+    private static final int BUFFER_SIZE = NetworkHeader.MAX_ACK_SIZE;  // Size of the buffer ACKs are received in, ACKs carry SACK blocks at most
+    public static final int DEFAULT_PAYLOAD_SIZE = 7;   // Bytes of the message carried by each segment unless configured
+    private static final byte[] NO_PAYLOAD = new byte[0];   // Payload of a SYN segment that announces no message length
+
+    // Return codes of receiveAck when no valid ACK was received
+    public static final int ACK_TIMEOUT = -1;
+    public static final int ACK_INVALID = -2;
+    public static final int ACK_ERROR = -3;
+
+    // Return value of sendStream and sendFile for a message abandoned at its time limit
+    public static final int MESSAGE_TIMEOUT = -3;
+
+    // Duplicate ACKs that trigger a fast retransmit.  Windows of DUP_ACK_THRESHOLD segments or fewer cannot produce that many
+    // for a lost segment, so their duplicate ACKs are stale ones and fast retransmit is off
+    private static final int DUP_ACK_THRESHOLD = 3;
+
+    // Why a segment waiting to be resent was taken as lost
+    private static final byte LOST_TIMEOUT = 1;
+    private static final byte LOST_DUP_ACKS = 2;
+
+    // Metrics shared by every Sender in the process
+    private static final LongAdder SEGMENTS_SENT = Metrics.counter("rdt_sender_segments_sent_total", "Segments sent, SYNs and retransmissions included");
+    private static final LongAdder RETRANSMITS = Metrics.counter("rdt_sender_retransmits_total", "Segments sent again after a timeout or an invalid ACK");
+    private static final LongAdder FAST_RETRANSMITS = Metrics.counter("rdt_sender_fast_retransmits_total", "Segments sent again after duplicate ACKs, before their timer expired");
+    private static final LongAdder TIMEOUTS = Metrics.counter("rdt_sender_timeouts_total", "Retransmission timer expirations");
+    private static final LongAdder ACKS_RECEIVED = Metrics.counter("rdt_sender_acks_received_total", "Intact ACKs received");
+    private static final LongAdder ACKS_CORRUPT = Metrics.counter("rdt_sender_acks_corrupt_total", "ACKs that failed their checksum");
+    private static final LongAdder UNEXPECTED_PACKETS = Metrics.counter("rdt_sender_unexpected_packets_total", "Intact packets received that were not ACKs");
+    private static final LongAdder DUPLICATE_ACKS = Metrics.counter("rdt_sender_duplicate_acks_total", "Intact ACKs that did not advance the cumulative ACK while segments were outstanding");
+    private static final LongAdder BYTES_ACKED = Metrics.counter("rdt_sender_bytes_acked_total", "Payload bytes acknowledged by the Receiver");
+    private static final Metrics.Histogram RTT = Metrics.histogram("rdt_sender_rtt_seconds", "Round trip times sampled for the RTO, segments sent once only");
+    private static final Metrics.Histogram ACK_LATENCY = Metrics.histogram("rdt_sender_ack_latency_seconds", "Time from the first transmission of a segment to its ACK, retransmissions included");
 
     private static final String SOURCE_IP = "127.0.0.1";
-    private static final String DEST_IP = "127.0.0.1";
+    // Addresses resolved once to the form carried in the network header
+    private int                 _sourceAddress;
+    private int                 _receiverAddress;
+    private int                 _receiverPortNumber;
+    private InetAddress         _networkAddress;
+    private int                 _networkPort;
+
+    // Initial sequence number of the next message: random for the first one so segments of an earlier run are not mistaken for it,
+    // then right after the final segment of the previous message
+    private int                 _initialSeq = new Random().nextInt();
+
+    // Random connection ID carried by every segment, the Receiver keeps the state of each connection apart
+    private int                 _connectionId = new Random().nextInt();
+
+    // Retransmission timeout derived from measured round trip times
+    private RttEstimator        _rtt;
+
+    // Congestion control of the message being sent, restarted in slow start by every message
+    private CongestionControl.Algorithm _congestionAlgorithm = CongestionControl.Algorithm.NEWRENO;
+    private CongestionControl   _congestion;
+
+    private int                 _ackNum;                // ACK number of the last valid ACK received by receiveAck
+    private int                 _ackPayloadSize;        // Payload size accepted by the Receiver, carried by the same ACK
+    private int                 _sackCount;             // Number of SACK blocks carried by the same ACK
+    private final int[]         _sackBlocks = new int[2 * NetworkHeader.MAX_SACK_BLOCKS];   // First and last sequence number of each
+
+    // Bytes of the message carried by each segment.  Proposed by the SYN and lowered to what the Receiver accepts
+    private int                 _payloadSize = DEFAULT_PAYLOAD_SIZE;
+
+    private long                _startedAt;             // System.nanoTime() when the current message started
+    private long                _messageTimeoutNanos;   // Longest a message may take before it is abandoned, 0 for no limit
+    private long                _bytesAcked;            // Payload bytes of the current message acknowledged so far
+    private byte[]              _ring = NO_PAYLOAD;     // Send ring of the last streamed message, reused by the next one
+
+    // Network header and buffer used to build every outgoing segment
+    private NetworkHeader       _sendHeader = new NetworkHeader().wrap(new byte[NetworkHeader.HEADER_SIZE + Math.max(DEFAULT_PAYLOAD_SIZE, NetworkHeader.MESSAGE_LENGTH_SIZE)]);
+    private NetworkHeader       _receiveHeader = new NetworkHeader();
+
+    // Datagram packets and the ACK buffer reused for every send and receive
+    private DatagramPacket      _sendPacket = new DatagramPacket(NO_PAYLOAD, 0);
+    private byte[]              _receiveBuffer = new byte[BUFFER_SIZE];
+    private DatagramPacket      _receivePacket = new DatagramPacket(this._receiveBuffer, BUFFER_SIZE);
 
     // Utility class to create network headers for RDT packets
     private Utility utility = new Utility();
@@ -48,11 +139,154 @@ public class Sender {
      * @param destPort     The destination port number (for network).
      */
     public Sender(int port, String receiverIP, String receiverPort, String destIP, String destPort){
+        this(port, receiverIP, receiverPort, destIP, destPort, new RttEstimator());
+    }
+
+    /**
+     * Constructor for the Sender class with a custom RTT estimator.
+     * 
+     * @param port         The sender's port number.
+     * @param receiverIP   The IP address of the receiver.
+     * @param receiverPort The port number of the receiver.
+     * @param destIP       The destination IP address (for network).
+     * @param destPort     The destination port number (for network).
+     * @param rtt          Estimator driving the retransmission timer.
+     */
+    public Sender(int port, String receiverIP, String receiverPort, String destIP, String destPort, RttEstimator rtt){
         this._port = port;
         this.receiverIP = receiverIP;
         this.receiverPort = receiverPort;
         this.destIP = destIP;
         this.destPort = destPort;
+        this._rtt = rtt;
+
+        // Removed again by closeSocket()
+        String labels = Metrics.instance("sender", port);
+        Metrics.gauge("rdt_sender_rto_seconds", "Current retransmission timeout", labels, () -> this._rtt.rtoNanos() / 1e9);
+        Metrics.gauge("rdt_sender_srtt_seconds", "Smoothed round trip time", labels, () -> this._rtt.srttMillis() / 1000);
+        Metrics.gauge("rdt_sender_cwnd_segments", "Congestion window", labels, () -> (this._congestion != null) ? this._congestion.cwnd() : 0);
+        Metrics.gauge("rdt_sender_ssthresh_segments", "Slow start threshold", labels, () -> (this._congestion != null) ? this._congestion.ssthresh() : 0);
+        Metrics.gauge("rdt_sender_goodput_bytes_per_second", "Payload bytes acknowledged per second since the current message started", labels, this::goodput);
+    }
+
+    /**
+     * @return - Payload bytes acknowledged per second since the current message started, 0 before it started
+     */
+    public double goodput(){
+        long elapsed = System.nanoTime() - this._startedAt;
+        if (this._startedAt == 0 || elapsed <= 0){
+            return 0;
+        }
+        return this._bytesAcked * 1e9 / elapsed;
+    }
+
+    /**
+     * @return - One line summary of the finished transfer: RTO state, RTT and ACK latency percentiles and goodput
+     */
+    public String summary(){
+        return String.format("Transfer complete. %s RTT %s ACK latency %s Goodput: %.0f bytes/s",
+                             this._rtt, RTT, ACK_LATENCY, this.goodput());
+    }
+
+    /**
+     * Records the metrics of a segment that was just acknowledged and feeds its RTT sample to the estimator
+     * @param firstSentAt   - System.nanoTime() when the segment was first sent
+     * @param sentAt        - System.nanoTime() when the segment was last sent
+     * @param retransmitted - True if it was sent more than once, so its RTT is ambiguous (Karn's rule)
+     * @param bytes         - Payload bytes the segment carried, if not counted already
+     */
+    private void acknowledged(long firstSentAt, long sentAt, boolean retransmitted, int bytes){
+        long now = System.nanoTime();
+        if (!retransmitted){
+            this._rtt.addSample(now - sentAt);
+            RTT.record(now - sentAt);
+        }
+        ACK_LATENCY.record(now - firstSentAt);
+        BYTES_ACKED.add(bytes);
+        this._bytesAcked += bytes;
+    }
+
+    /**
+     * Sets the congestion control algorithm used from the next message on
+     *
+     * @param algorithm - Algorithm adjusting the number of segments in flight
+     */
+    public void setCongestionControl(CongestionControl.Algorithm algorithm){
+        this._congestionAlgorithm = algorithm;
+    }
+
+    /**
+     * Sets how long a message may take, from its SYN to the ACK of its final segment.  Segments are otherwise retransmitted
+     * for as long as the Receiver stays silent
+     *
+     * @param timeoutMillis - Milliseconds before the message is abandoned, 0 for no limit
+     */
+    public void setMessageTimeout(long timeoutMillis){
+        this._messageTimeoutNanos = timeoutMillis * 1000000L;
+    }
+
+    /**
+     * Checks the current message against its time limit, at a retransmission timeout.  The Receiver's session of an abandoned
+     * message keeps waiting for its missing segments, so the next message starts a new connection
+     *
+     * @return - True if the message ran out of time and was abandoned
+     */
+    private boolean abandonExpired(){
+        if (this._messageTimeoutNanos == 0 || System.nanoTime() - this._startedAt < this._messageTimeoutNanos){
+            return false;
+        }
+        Log.error("Error: Message not acknowledged within " + this._messageTimeoutNanos / 1000000L + " ms, abandoned");
+        this._connectionId = new Random().nextInt();
+        this._initialSeq = new Random().nextInt();
+        return true;
+    }
+
+    /**
+     * Sets the transport createSocket() opens
+     *
+     * @param kind - UDP, or the in-memory transport of this JVM
+     */
+    public void setTransport(Transport.Kind kind){
+        this._transportKind = kind;
+    }
+
+    /**
+     * @return - Congestion control of the current or last message, or null before the first one
+     */
+    public CongestionControl getCongestionControl(){
+        return this._congestion;
+    }
+
+    /**
+     * @return - The RTT estimator, exposing the current RTO and SRTT
+     */
+    public RttEstimator getRttEstimator(){
+        return this._rtt;
+    }
+
+    /**
+     * Sets the payload size proposed to the Receiver when the next message starts
+     *
+     * @param payloadSize - Bytes of the message carried by each segment, between 1 and NetworkHeader.MAX_PAYLOAD_SIZE
+     */
+    public void setPayloadSize(int payloadSize){
+        this._payloadSize = payloadSize;
+        // The SYN carries the message length however small the segments are
+        this._sendHeader.wrap(new byte[NetworkHeader.HEADER_SIZE + Math.max(payloadSize, NetworkHeader.MESSAGE_LENGTH_SIZE)]);
+    }
+
+    /**
+     * @return - Port the Sender is bound to
+     */
+    public int getPort(){
+        return this._port;
+    }
+
+    /**
+     * @return - Bytes of the message carried by each segment, as agreed with the Receiver once a message has started
+     */
+    public int getPayloadSize(){
+        return this._payloadSize;
     }
 
     /**
@@ -62,42 +296,49 @@ public class Sender {
      */
     public int createSocket() {
         try {
-            this._socket = new DatagramSocket(this._port);
-            this._socket.setSoTimeout(4000);
-        } catch (SocketException e){
-            System.err.println("Unable to create and bind to socket");
+            this._socket = Transport.open(this._transportKind, this._port);
+            this._socket.setTimeout(this._rtt.rtoMillis());
+        } catch (IOException e){
+            Log.error("Unable to create and bind to socket");
             return -1;
         }
         return 0;
     }
 
     /**
-     * Connects and binds to the specified port
-     * 
-     * @param hostname - IP address that port where located
-     * @param port     - Port to bind to
-     * @return         - If there is an error, will return non-zero value
+     * Resolves the Sender, Receiver and Network addresses once so packets can be built without name lookups
+     *
+     * @return - 0, if no error; otherwise, a negative number indicates an error
      */
-    public int connectSocket(String hostname, String port) {
+    public int resolveAddresses() {
         try {
-            this._socket.connect(InetAddress.getByName(hostname), Integer.parseInt(port));
+            this._sourceAddress = this.utility.resolveIP(SOURCE_IP);
+            this._receiverAddress = this.utility.resolveIP(this.receiverIP);
+            this._receiverPortNumber = Integer.parseInt(this.receiverPort);
+            this._networkAddress = InetAddress.getByName(this.destIP);
+            this._networkPort = Integer.parseInt(this.destPort);
         } catch (UnknownHostException ex) {
-            System.err.println("Error: Unable to connect to host");
+            Log.error("Error: Not a valid host address provided");
             return -1;
         } catch (NumberFormatException ex) {
-            System.err.println("Error: Unable to connect to host. Invalid port number");
+            Log.error("Error: Invalid port number");
             return -2;
         }
-
         return 0;
     }
 
     /**
-     * Closes open socket
+     * Closes open socket and removes the Sender's gauges
      * 
      */
     public int closeSocket() {
-        this._socket.close();
+        Metrics.removeGauges(Metrics.instance("sender", this._port));
+        try {
+            this._socket.close();
+        } catch (IOException e){
+            Log.error("Error: Unable to close socket");
+            return -1;
+        }
         return 0;
     }
     
@@ -107,95 +348,621 @@ public class Sender {
      * @param response - the reponse as a string 
      */
     public void printResponse(String response){
-        System.out.println("FROM RECEIVER: " + response + "\n");
+        if (Log.isEnabled(Log.DEBUG)){
+            Log.debug("FROM RECEIVER: " + response + "\n");
+        }
     }
     
     /**
-     * Calls on the utility class to create the network header and datagram packet to send to the Network
+     * Fills in the fields of the outgoing segment's network header, the payload is put in by the caller
      * 
-     * @param segment       - Message segment to send
-     * @param senderIP      - IP address of Sender
-     * @param senderPort    - Port number of Sender
-     * @param networkIP     - IP address of Network
-     * @param networkPort   - Port number of Network
-     * @param receiverIP    - IP address of Receiver
-     * @param receiverPort  - Port number of Receiver
-     * @return              - 0, if no errors; otherwise, non-zero value indicates error
+     * @param seq    - Sequence number of the segment
+     * @param ack    - Value of the ACK field
+     * @param length - Number of payload bytes
+     * @param flags  - Flags of the segment
      */
-    public int sendRequest(String segment, String senderIP, String senderPort, String networkIP, String networkPort, String receiverIP, String receiverPort){
-        String networkHeader = this.utility.createNetworkHeader(senderIP, senderPort, receiverIP, receiverPort, segment);
+    private void setHeader(int seq, int ack, int length, int flags){
+        this._sendHeader.set(this._sourceAddress, this._port,
+                             this._receiverAddress, this._receiverPortNumber,
+                             seq, ack, flags, length, this._connectionId);
+    }
 
-        DatagramPacket packet = this.utility.createDatagramPacket(networkHeader, networkIP, networkPort, BUFFER_SIZE);
+    /**
+     * Checksums the outgoing segment, header and payload already in place, and sends it to the Network
+     * 
+     * @return - 0, if no errors; otherwise, non-zero value indicates error
+     */
+    private int transmit(){
+        this._sendHeader.updateChecksum();
 
-        //  If the packet is created, send it through the datagram socket
-        if(packet != null) {
-            try {
+        DatagramPacket packet = this.utility.fillDatagramPacket(this._sendPacket, this._sendHeader, this._networkAddress, this._networkPort);
 
-                // Call underlying UDP sending method
-                this._socket.send(packet);
-                System.out.println("Senders's Request: " + networkHeader);
-            } catch (IOException e) {
-                System.err.println("Error: Failed to send message");
+        try {
+            // Call underlying UDP sending method
+            this._socket.send(packet);
+            SEGMENTS_SENT.increment();
+            PacketTrace.record(PacketTrace.SENT, this._sendHeader);
+            if (Log.isEnabled(Log.DEBUG)){
+                Log.debug("Senders's Request: " + this._sendHeader);
+            }
+        } catch (IOException e) {
+            Log.error("Error: Failed to send message");
+            return -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Starts a message: sends the SYN segment, proposing the payload size, until the Receiver ACKs it.
+     * The Receiver's ACK carries the payload size it accepted, which every following segment uses
+     *
+     * @param messageLength - Bytes in the message, announced in the SYN; otherwise, -1 if unknown, as for a stream
+     * @return              - 0, if the Receiver accepted the message; otherwise, MESSAGE_TIMEOUT if it ran out of time, or another
+     *                        negative number on an error
+     */
+    public int handshake(long messageLength){
+        boolean retransmitted = false;
+        this._startedAt = System.nanoTime();
+        this._bytesAcked = 0;
+        long firstSentAt = this._startedAt;
+
+        while (true){
+            Log.info("SYN: proposing payload size " + this._payloadSize);
+            this.setHeader(this._initialSeq, this._payloadSize, 0, NetworkHeader.FLAG_SYN);
+            if (messageLength >= 0){
+                this._sendHeader.putMessageLength(messageLength);
+            } else {
+                this._sendHeader.putPayload(NO_PAYLOAD, 0, 0);
+            }
+            if (this.transmit() < 0){
                 return -1;
             }
-            return 0;        
+            long sentAt = System.nanoTime();
+            long deadline = sentAt + this._rtt.rtoNanos();
+
+            // Wait for the ACK of the SYN, ignoring anything else, until the retransmission timer expires
+            int result = ACK_INVALID;
+            while (result != 0 || this._ackNum != this._initialSeq){
+                long waitMillis = (deadline - System.nanoTime()) / 1000000L;
+                if (waitMillis <= 0){
+                    result = ACK_TIMEOUT;
+                    break;
+                }
+                result = this.receiveAck((int) waitMillis);
+                if (result == ACK_ERROR){
+                    return -1;
+                }
+            }
+
+            if (result == 0){
+                // Karn's rule: only a SYN sent once gives an unambiguous RTT sample
+                this.acknowledged(firstSentAt, sentAt, retransmitted, 0);
+                if (this._ackPayloadSize < 1 || this._ackPayloadSize > this._payloadSize){
+                    Log.error("Error: Receiver accepted an invalid payload size of " + this._ackPayloadSize);
+                    return -2;
+                }
+                this._payloadSize = this._ackPayloadSize;
+                Log.info("Payload size agreed: " + this._payloadSize);
+                return 0;
+            }
+
+            TIMEOUTS.increment();
+            if (this.abandonExpired()){
+                return MESSAGE_TIMEOUT;
+            }
+            Log.debug("\nTIMEOUT FOR SYN.  RESENDING SYN...");
+            RETRANSMITS.increment();
+            this._rtt.backoff();
+            retransmitted = true;
         }
-        System.err.println("Error: Failed to create message");
-        return -1;
     }
 
     /**
-     * Receive the response from the Network (indirectly the Receiver) and return as string
-     * @param sequenceNum - Sequence number to check against ACK byte
-     * @return            - String representing response message
+     * Receive an ACK from the Network (indirectly the Receiver) while a window of segments is in flight
+     * @param timeoutMillis - Milliseconds to wait for the ACK
+     * @return              - 0, if a valid ACK was received and its ACK number stored in _ackNum; otherwise, ACK_TIMEOUT, ACK_INVALID or ACK_ERROR
      */
-    public String receiveResponse(char sequenceNum){
-        byte[] buffer = new byte[BUFFER_SIZE];
-        DatagramPacket receivedPacket = new DatagramPacket(buffer, BUFFER_SIZE);
-        String message;
+    public int receiveAck(int timeoutMillis){
+        DatagramPacket receivedPacket = this._receivePacket;
+        receivedPacket.setLength(BUFFER_SIZE);
 
         try {
+            this._socket.setTimeout(timeoutMillis);
+
             // Call to underlying UDP receive method
             this._socket.receive(receivedPacket);
 
-            HashMap<String, String> networkPortions = this.utility.parseNetworkHeader(new String(receivedPacket.getData()));
+        // Timeout occured while waiting for response
+        } catch (SocketTimeoutException e){
+            return ACK_TIMEOUT;
 
-            message = networkPortions.get("message");
+        } catch (IOException e) {
+            Log.error("Unable to receive message from client");
+            return ACK_ERROR;
+        }
 
-            char receivedAckByte = message.charAt(0);
-            char checksumByte = message.charAt(1);
-            
-            // Check if there are any errors indicated by ACK or checksum bytes
-            if (receivedAckByte != sequenceNum || checksumByte != '0'){
-                System.err.println("Error: Incorrect ACK byte received or corruption of packet detected by non-zero checksum");
-                return "ACK||CHECK";
-            }
+        NetworkHeader header = this._receiveHeader.wrap(receivedPacket.getData());
 
-        // Timeout occured while waiting for response
-        } catch (SocketTimeoutException e){
-            System.err.println("Socket Timeout Occured");
-            return "TIMEOUT";
+        // Corrupted ACKs are ignored, the retransmission timer recovers the segment
+        boolean intact = header.verifyChecksum(receivedPacket.getLength());
+        PacketTrace.record(intact ? PacketTrace.RECEIVED : PacketTrace.CORRUPT, header);
+        if (!intact){
+            ACKS_CORRUPT.increment();
+            Log.error("Error: Corruption of ACK detected by checksum");
+            return ACK_INVALID;
+        }
+        if (!header.isAck()){
+            UNEXPECTED_PACKETS.increment();
+            Log.error("Error: Packet without the ACK flag ignored");
+            return ACK_INVALID;
+        }
+        if (header.connection() != this._connectionId){
+            Log.error("Error: ACK for another connection ignored");
+            return ACK_INVALID;
+        }
+        ACKS_RECEIVED.increment();
 
+        this._ackNum = header.ack();
+        this._ackPayloadSize = header.seq();
+        this._sackCount = header.sackBlocks();
+        for (int i = 0; i < this._sackCount; i++){
+            this._sackBlocks[2 * i] = header.sackFirst(i);
+            this._sackBlocks[2 * i + 1] = header.sackLast(i);
+        }
+        this.printResponse("ACK" + header.ack());
+        return 0;
+    }
+
+    /**
+     * Reads the next segment of the stream into its slot of the send ring.  A mapped file is not copied, only the segment's length is taken
+     * @param in      - Stream being sent, or null for a mapped file
+     * @param file    - Mapped file being sent, or null for a stream
+     * @param ring    - Payload bytes of the segments in the ring, the agreed payload size per slot
+     * @param lengths - Payload length of each slot
+     * @param slot    - Slot to fill
+     * @param index   - Index of the segment within the message
+     * @return        - Number of bytes read, 0 at the end of the stream; otherwise, -1 on a read error
+     */
+    private int readSegment(InputStream in, MappedFile file, byte[] ring, int[] lengths, int slot, long index){
+        if (file != null){
+            lengths[slot] = file.segmentLength(index);
+            return lengths[slot];
+        }
+        try {
+            lengths[slot] = in.readNBytes(ring, slot * this._payloadSize, this._payloadSize);
         } catch (IOException e) {
-            System.err.println("Unable to receive message from client");
-            return null;
+            Log.error("Error: Unable to read the input");
+            return -1;
         }
+        return lengths[slot];
+    }
 
-        return message;
+    /**
+     * Starts a message with the SYN handshake, then streams all segments of the input while keeping up to windowSize unacknowledged segments in flight.
+     * The input is read and segmented as the window advances, so only the segments in flight are held in memory.
+     * ACKs are cumulative in every mode.  When a retransmission timer expires, Go-Back-N resends every outstanding segment.
+     * Selective Repeat (and stop-and-wait, as a window of one) also takes the SACK blocks of each ACK, keeps a timer per segment
+     * and only resends the segments the Receiver does not hold.
+     * Unless the mode is stop-and-wait or the window holds DUP_ACK_THRESHOLD segments or fewer, duplicate ACKs start a fast retransmit that lasts until every segment sent before it is ACKed: Go-Back-N resends the window once,
+     * Selective Repeat resends the oldest missing segment, every segment with DUP_ACK_THRESHOLD SACKed segments above it,
+     * and the new oldest segment after each partial ACK, each at most once per fast retransmit.
+     * The oldest missing segment is resent at once.  Every other resent segment, and every new segment, is sent only while fewer than the congestion window are in flight.
+     *
+     * @param in         - Stream to send, read until its end
+     * @param mode       - Retransmission mode
+     * @param windowSize - Maximum number of unacknowledged segments in flight
+     * @return           - 0, if every segment was acknowledged; otherwise, -1 on a socket error, -2 on a read error or
+     *                     MESSAGE_TIMEOUT if the message ran out of time, see setMessageTimeout
+     */
+    public int sendStream(InputStream in, WindowMode mode, int windowSize){
+        return this.send(in, null, mode, windowSize);
+    }
+
+    /**
+     * Sends a whole file like sendStream, but maps it into memory instead of reading it.  Each segment's payload is copied straight
+     * from the mapping into its datagram, and the SYN announces the file's length so the Receiver can map its output file too
+     *
+     * @param file       - File to send from its start to its end, open for reading
+     * @param mode       - Retransmission mode
+     * @param windowSize - Maximum number of unacknowledged segments in flight
+     * @return           - 0, if every segment was acknowledged; otherwise, -1 on a socket error, -2 on a read error or
+     *                     MESSAGE_TIMEOUT if the message ran out of time, see setMessageTimeout
+     */
+    public int sendFile(FileChannel file, WindowMode mode, int windowSize){
+        return this.send(null, file, mode, windowSize);
+    }
+
+    /**
+     * Sends a stream or a file, see sendStream and sendFile
+     *
+     * @param in         - Stream to send, or null to send the file
+     * @param file       - File to send, or null to send the stream
+     * @param mode       - Retransmission mode
+     * @param windowSize - Maximum number of unacknowledged segments in flight
+     * @return           - 0, if every segment was acknowledged; otherwise, -1 on a socket error, -2 on a read error or
+     *                     MESSAGE_TIMEOUT if the message ran out of time, see setMessageTimeout
+     */
+    private int send(InputStream in, FileChannel file, WindowMode mode, int windowSize){
+        long fileLength = -1;
+        if (file != null){
+            try {
+                fileLength = file.size();
+            } catch (IOException e) {
+                Log.error("Error: Unable to read the input");
+                return -2;
+            }
+        }
+        int accepted = this.handshake(fileLength);
+        if (accepted < 0){
+            return (accepted == MESSAGE_TIMEOUT) ? MESSAGE_TIMEOUT : -1;
+        }
+        CongestionControl congestion = new CongestionControl(this._congestionAlgorithm, windowSize);
+        this._congestion = congestion;
+
+        // The file is mapped once the payload size is agreed, its segments are never copied into the ring
+        MappedFile mapped = null;
+        if (file != null){
+            try {
+                mapped = new MappedFile(file, FileChannel.MapMode.READ_ONLY, 0, fileLength, this._payloadSize);
+            } catch (IOException e) {
+                Log.error("Error: Unable to map the input");
+                return -2;
+            }
+        }
+
+        // One slot more than the window holds the segment read ahead to find out whether the last one sent is final
+        int slots = windowSize + 1;
+        // The ring is kept for the next message, which mostly has the same window and payload size
+        byte[] ring = NO_PAYLOAD;
+        if (mapped == null){
+            if (this._ring.length != slots * this._payloadSize){
+                this._ring = new byte[slots * this._payloadSize];
+            }
+            ring = this._ring;
+        }
+        int[] lengths = new int[slots];
+        boolean[] acked = new boolean[slots];
+        boolean[] retransmitted = new boolean[slots];  // Segments excluded from RTT sampling (Karn's rule)
+        byte[] lost = new byte[slots];                 // LOST_TIMEOUT or LOST_DUP_ACKS while a segment waits to be resent, 0 otherwise
+        long[] firstSentAt = new long[slots];          // System.nanoTime() of the first transmission
+        long[] sentAt = new long[slots];               // System.nanoTime() of the last transmission
+        long[] deadlines = new long[slots];            // System.nanoTime() when the retransmission timer expires
+        long base = 0;          // Oldest unacknowledged segment
+        long nextSeq = 0;       // Next segment that has not been sent yet
+        long readCount = 0;     // Segments read from the input so far
+        boolean endOfInput = false;
+
+        // Fast retransmit state
+        // A lower threshold would resend on every stale duplicate ACK (the sorcerer's apprentice problem), so small windows go without
+        boolean fastRetransmit = mode != WindowMode.STOP_AND_WAIT && windowSize > DUP_ACK_THRESHOLD;
+        int dupAcks = 0;        // Duplicate ACKs since the cumulative ACK last advanced
+        boolean recovering = false;
+        long recover = 0;       // Fast retransmit ends, or may start again after a timeout, once every segment before this one is ACKed
+        long recoveryStartedAt = 0;     // System.nanoTime() when it started, segments sent since are not resent again
+
+        // Read the first segment ahead.  An empty input is sent as a single empty final segment
+        int read = this.readSegment(in, mapped, ring, lengths, 0, 0);
+        if (read < 0){
+            return -2;
+        }
+        endOfInput = (read == 0);
+        readCount++;
+
+        while (base < readCount){
+
+            // Resend the segments marked lost, oldest first, while fewer than the congestion window are in flight.
+            // A segment marked lost is no longer in flight, so a collapsed window resends one segment per ACK instead of a burst
+            int inFlight = 0;
+            for (long i = base; i < nextSeq; i++){
+                int slot = (int) (i % slots);
+                if (!acked[slot] && lost[slot] == 0){
+                    inFlight++;
+                }
+            }
+            for (long i = base; i < nextSeq && inFlight < congestion.window(); i++){
+                int slot = (int) (i % slots);
+                if (acked[slot] || lost[slot] == 0){
+                    continue;
+                }
+                if (this.resendSegment(ring, mapped, lengths, slot, i, endOfInput && i == readCount - 1, lost[slot]) < 0){
+                    return -1;
+                }
+                lost[slot] = 0;
+                retransmitted[slot] = true;
+                sentAt[slot] = System.nanoTime();
+                deadlines[slot] = sentAt[slot] + this._rtt.rtoNanos();
+                inFlight++;
+            }
+
+            // Fill the congestion window with segments that have not been sent yet
+            while (nextSeq < readCount && nextSeq < base + congestion.window()){
+                // Read the following segment ahead, the segment being sent is final if there is none
+                if (!endOfInput && readCount == nextSeq + 1){
+                    read = this.readSegment(in, mapped, ring, lengths, (int) (readCount % slots), readCount);
+                    if (read < 0){
+                        return -2;
+                    }
+                    if (read == 0){
+                        endOfInput = true;
+                    } else {
+                        readCount++;
+                    }
+                }
+
+                int slot = (int) (nextSeq % slots);
+                if (this.sendRingSegment(ring, mapped, lengths, slot, nextSeq, endOfInput && nextSeq == readCount - 1) < 0){
+                    return -1;
+                }
+                acked[slot] = false;
+                retransmitted[slot] = false;
+                lost[slot] = 0;
+                sentAt[slot] = System.nanoTime();
+                firstSentAt[slot] = sentAt[slot];
+                deadlines[slot] = sentAt[slot] + this._rtt.rtoNanos();
+                nextSeq++;
+            }
+
+            // Wait for an ACK no longer than the earliest retransmission deadline of the segments in flight
+            long earliestDeadline = Long.MAX_VALUE;
+            for (long i = base; i < nextSeq; i++){
+                int slot = (int) (i % slots);
+                if (!acked[slot] && lost[slot] == 0){
+                    earliestDeadline = Math.min(earliestDeadline, deadlines[slot]);
+                }
+            }
+            long waitMillis = (earliestDeadline == Long.MAX_VALUE) ? 1 : (earliestDeadline - System.nanoTime()) / 1000000L;
+            int result = this.receiveAck((int) Math.max(1, waitMillis));
+
+            if (result == ACK_ERROR){
+                return -1;
+            }
+
+            if (result == 0){
+                // Cumulative ACK: everything up to and including the ACK number was received.
+                // Sequence numbers wrap, so compare offsets from the base
+                long outstanding = nextSeq - base;
+                int firstSeq = this._initialSeq + 1 + (int) base;
+                int offset = this._ackNum - firstSeq;
+                long newest = -1;   // Newest segment this ACK acknowledged for the first time
+                int newlyAcked = 0;
+                for (long i = 0; offset >= 0 && i <= offset && i < outstanding; i++){
+                    if (this.markAcked(acked, lengths, (int) ((base + i) % slots))){
+                        newest = base + i;
+                        newlyAcked++;
+                    }
+                }
+
+                // SACK blocks: segments held by the Receiver beyond the gap are never resent
+                for (int b = 0; b < this._sackCount; b++){
+                    int last = this._sackBlocks[2 * b + 1] - firstSeq;
+                    for (long i = Math.max(0, this._sackBlocks[2 * b] - firstSeq); i <= last && i < outstanding; i++){
+                        if (this.markAcked(acked, lengths, (int) ((base + i) % slots))){
+                            newest = Math.max(newest, base + i);
+                            newlyAcked++;
+                        }
+                    }
+                }
+
+                if (newest >= 0){
+                    int newestSlot = (int) (newest % slots);
+                    this.acknowledged(firstSentAt[newestSlot], sentAt[newestSlot], retransmitted[newestSlot], 0);
+                }
+
+                long previousBase = base;
+                while (base < nextSeq && acked[(int) (base % slots)]){
+                    base++;
+                }
+
+                // A cumulative ACK that does not move while segments are outstanding means a later segment arrived,
+                // so the oldest one was most likely lost.  Resend it now instead of waiting for its timer
+                // The window only grows outside of a fast retransmit, whose ACKs are for segments sent before the loss
+                if (!recovering){
+                    congestion.onAck(newlyAcked, this._rtt.srttNanos());
+                }
+
+                boolean resend = false;
+                if (base > previousBase){
+                    dupAcks = 0;
+                    if (recovering && base >= recover){
+                        recovering = false;
+                    }
+                    // Partial ACK: the next missing segment was lost in the same window
+                    resend = recovering && mode != WindowMode.GO_BACK_N;
+                } else if (base < nextSeq){
+                    DUPLICATE_ACKS.increment();
+                    dupAcks++;
+                    if (fastRetransmit && dupAcks >= DUP_ACK_THRESHOLD && !recovering && base >= recover){
+                        congestion.onFastRetransmit((int) (nextSeq - base));
+                        recovering = true;
+                        recover = nextSeq;
+                        recoveryStartedAt = System.nanoTime();
+                        resend = true;
+                    } else {
+                        // New SACK blocks may show more segments lost
+                        resend = recovering && mode != WindowMode.GO_BACK_N;
+                    }
+                }
+
+                if (resend && fastRetransmit){
+                    int sackedAbove = 0;
+                    for (long i = nextSeq - 1; i >= base; i--){
+                        int slot = (int) (i % slots);
+                        if (acked[slot]){
+                            sackedAbove++;
+                            continue;
+                        }
+                        // Go-Back-N resends the whole window, the Receiver discarded everything after the loss
+                        boolean missing = mode == WindowMode.GO_BACK_N || i == base || sackedAbove >= DUP_ACK_THRESHOLD;
+                        if (missing && lost[slot] == 0 && sentAt[slot] - recoveryStartedAt < 0){
+                            lost[slot] = LOST_DUP_ACKS;
+                        }
+                    }
+
+                    // The oldest missing segment is resent at once (RFC 5681, and RFC 6582 on a partial ACK),
+                    // the others once the window has room for them
+                    int baseSlot = (int) (base % slots);
+                    if (base < nextSeq && lost[baseSlot] != 0){
+                        if (this.resendSegment(ring, mapped, lengths, baseSlot, base, endOfInput && base == readCount - 1, lost[baseSlot]) < 0){
+                            return -1;
+                        }
+                        lost[baseSlot] = 0;
+                        retransmitted[baseSlot] = true;
+                        sentAt[baseSlot] = System.nanoTime();
+                        deadlines[baseSlot] = sentAt[baseSlot] + this._rtt.rtoNanos();
+                    }
+                }
+            }
+
+            // A retransmission timer expired: every segment not ACKed is taken as lost, as in RFC 5681 and RFC 6675,
+            // and resent from the oldest as the collapsed window allows.  Go-Back-N resends the whole window this way
+            long now = System.nanoTime();
+            boolean timedOut = false;
+            for (long i = base; i < nextSeq && !timedOut; i++){
+                int slot = (int) (i % slots);
+                timedOut = !acked[slot] && lost[slot] == 0 && deadlines[slot] - now <= 0;
+            }
+            if (timedOut){
+                // Back off once per timeout event, not once per resent segment.  The window grows again from one segment
+                // with the ACKs of the resent segments, but their duplicate ACKs must not start a fast retransmit (RFC 6582)
+                TIMEOUTS.increment();
+                if (this.abandonExpired()){
+                    return MESSAGE_TIMEOUT;
+                }
+                this._rtt.backoff();
+                if (Log.isEnabled(Log.DEBUG)){
+                    Log.debug(this._rtt.toString());
+                }
+                congestion.onTimeout((int) (nextSeq - base));
+                if (Log.isEnabled(Log.DEBUG)){
+                    Log.debug(congestion.toString());
+                }
+                recovering = false;
+                recover = nextSeq;
+                dupAcks = 0;
+                for (long i = base; i < nextSeq; i++){
+                    int slot = (int) (i % slots);
+                    if (!acked[slot]){
+                        lost[slot] = LOST_TIMEOUT;
+                    }
+                }
+            }
+        }
+
+        // The next message starts right after this one's final segment, so the Receiver takes its SYN for a new message
+        // instead of a late retransmission, and one Sender can send any number of messages over the same connection
+        this._initialSeq += 1 + (int) readCount;
+        return 0;
+    }
+
+    /**
+     * Resends a segment taken as lost and counts the retransmission
+     * @param ring    - Send ring of sendStream
+     * @param file    - Mapped file being sent, or null to send from the ring
+     * @param lengths - Payload length of each slot
+     * @param slot    - Slot holding the segment
+     * @param index   - Index of the segment within the stream
+     * @param last    - True if the segment is the final segment of the stream
+     * @param cause   - LOST_TIMEOUT or LOST_DUP_ACKS
+     * @return        - 0, if no errors; otherwise, non-zero value indicates error
+     */
+    private int resendSegment(byte[] ring, MappedFile file, int[] lengths, int slot, long index, boolean last, byte cause){
+        if (Log.isEnabled(Log.DEBUG)){
+            Log.debug("\n" + ((cause == LOST_TIMEOUT) ? "TIMEOUT" : "DUPLICATE ACKS") + " FOR PACKET " + (index + 1) + ".  RESENDING PACKET...");
+        }
+        RETRANSMITS.increment();
+        if (cause == LOST_DUP_ACKS){
+            FAST_RETRANSMITS.increment();
+        }
+        return this.sendRingSegment(ring, file, lengths, slot, index, last);
+    }
+
+    /**
+     * Marks a segment of the send ring acknowledged
+     * @param acked   - Acknowledged flag of each slot
+     * @param lengths - Payload length of each slot
+     * @param slot    - Slot holding the segment
+     * @return        - True if the segment was not acknowledged before
+     */
+    private boolean markAcked(boolean[] acked, int[] lengths, int slot){
+        if (acked[slot]){
+            return false;
+        }
+        acked[slot] = true;
+        BYTES_ACKED.add(lengths[slot]);
+        this._bytesAcked += lengths[slot];
+        return true;
+    }
+
+    /**
+     * Sends one segment held in the send ring of sendStream, or in the mapped file of sendFile
+     * @param ring    - Payload bytes of the segments in the ring
+     * @param file    - Mapped file being sent, or null to send from the ring
+     * @param lengths - Payload length of each slot
+     * @param slot    - Slot holding the segment
+     * @param index   - Index of the segment within the stream
+     * @param last    - True if the segment is the final segment of the stream
+     * @return        - 0, if no errors; otherwise, non-zero value indicates error
+     */
+    private int sendRingSegment(byte[] ring, MappedFile file, int[] lengths, int slot, long index, boolean last){
+        if (Log.isEnabled(Log.DEBUG)){
+            Log.debug("Packet: " + (index + 1));
+        }
+        int flags = last ? NetworkHeader.FLAG_TERM : 0;
+        this.setHeader(this._initialSeq + 1 + (int) index, 0, lengths[slot], flags);
+        if (file != null){
+            file.read(index, this._sendHeader);
+        } else {
+            this._sendHeader.putPayload(ring, slot * this._payloadSize, lengths[slot]);
+        }
+        return this.transmit();
     }
 
     /**
      * The main method for the Sender application.
      * 
-     * @param args Command-line arguments: <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port>
+     * @param args Command-line arguments: <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port> [--mode saw|gbn|sr] [--window N] [--initial-rto ms] [--min-rto ms] [--max-rto ms] [--segment-size bytes] [--congestion newreno|cubic|fixed] [--file path|-] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]
      */
     public static void main(String[] args) {
         Sender sender;
         String message;
 
         // Make sure proper amount of command line arguments are passed in
-        if (args.length != 5){
-            System.err.println("Usuage: java Sender <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port>");
+        if (args.length < 5){
+            Log.error("Usuage: java Sender <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port> [--mode saw|gbn|sr] [--window N] [--initial-rto ms] [--min-rto ms] [--max-rto ms] [--segment-size bytes] [--congestion newreno|cubic|fixed] [--file path|-] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]");
+            return;
+        }
+
+        // Optional sliding window settings.  Defaults to stop-and-wait
+        HashMap<String, String> options = new Utility().parseOptions(args, 5);
+        if (options == null || Log.configure(options) < 0 || Metrics.configure(options, "sender") < 0){
+            return;
+        }
+
+        WindowMode mode = WindowMode.fromName(options.getOrDefault("mode", "saw"));
+        int windowSize;
+        int payloadSize;
+        RttEstimator rtt;
+        try {
+            windowSize = (mode == WindowMode.STOP_AND_WAIT) ? 1 : Integer.parseInt(options.getOrDefault("window", "8"));
+            payloadSize = Integer.parseInt(options.getOrDefault("segment-size", String.valueOf(DEFAULT_PAYLOAD_SIZE)));
+            rtt = new RttEstimator(Long.parseLong(options.getOrDefault("initial-rto", String.valueOf(RttEstimator.DEFAULT_INITIAL_RTO))),
+                                   Long.parseLong(options.getOrDefault("min-rto", String.valueOf(RttEstimator.DEFAULT_MIN_RTO))),
+                                   Long.parseLong(options.getOrDefault("max-rto", String.valueOf(RttEstimator.DEFAULT_MAX_RTO))));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Window size, segment size and RTO values must be integers");
+            return;
+        }
+        if (payloadSize < 1 || payloadSize > NetworkHeader.MAX_PAYLOAD_SIZE){
+            Log.error("Error: Segment size must be between 1 and " + NetworkHeader.MAX_PAYLOAD_SIZE + " bytes");
+            return;
+        }
+        if (mode == null || windowSize < 1 || windowSize > WindowMode.MAX_WINDOW_SIZE){
+            Log.error("Error: Mode must be saw, gbn or sr and window size between 1 and " + WindowMode.MAX_WINDOW_SIZE);
+            return;
+        }
+        CongestionControl.Algorithm congestion = CongestionControl.fromName(options.getOrDefault("congestion", "newreno"));
+        if (congestion == null){
+            Log.error("Error: Congestion control must be newreno, cubic or fixed");
             return;
         }
 
@@ -204,121 +971,73 @@ public class Sender {
                                 args[1],
                                 args[2],
                                 args[3],
-                                args[4]);
+                                args[4],
+                                rtt);
         
         // Error occured when providing arguments to Sender constructor
         } catch (NullPointerException e) {
-            System.err.println("Usuage: java Sender <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port>");
+            Log.error("Usuage: java Sender <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port>");
+            return;
+        }
+
+        sender.setPayloadSize(payloadSize);
+        sender.setCongestionControl(congestion);
+
+        if (sender.resolveAddresses() < 0){
             return;
         }
 
         if (sender.createSocket() < 0){
-            System.err.println("Error: Failed to create socket at port " + args[0]);
+            Log.error("Error: Failed to create socket at port " + args[0]);
+            return;
+        }
+
+        // Stream a file, or stdin for "-", segment by segment.  The socket stays unconnected like in the pipelined modes.
+        // A regular file is mapped instead of read
+        String file = options.get("file");
+        if (file != null){
+            int result;
+            if (!file.equals("-") && Files.isRegularFile(Paths.get(file))){
+                try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+                    Log.info("Beginning Sender." + " Port: " + args[0] + " Sending mapped: " + file);
+                    result = sender.sendFile(channel, mode, windowSize);
+                } catch (IOException e) {
+                    Log.error("Error: Unable to open " + file);
+                    result = -2;
+                }
+            } else {
+                try (InputStream in = new BufferedInputStream(file.equals("-") ? System.in : new FileInputStream(file))) {
+                    Log.info("Beginning Sender." + " Port: " + args[0] + " Streaming: " + file);
+                    result = sender.sendStream(in, mode, windowSize);
+                } catch (IOException e) {
+                    Log.error("Error: Unable to open " + file);
+                    result = -2;
+                }
+            }
+            if (result == 0){
+                Log.info(sender.summary());
+            }
+            sender.closeSocket();
             return;
         }
 
         // Read in user provided message
         Scanner scan = new Scanner(System.in);
-        System.out.println("Beginning Sender." + " Port: " + args[0]);
+        Log.info("Beginning Sender." + " Port: " + args[0]);
         System.out.print("Enter message: ");
+        System.out.flush();
         message = scan.nextLine();
 
         // Scanner is no longer needed so close it
         scan.close();
 
-        // Create segments array.  Messages will only be 7 bytes with 3 bytes for SEQ#, checksum, term bit followed by 7 byte message
-        String[] segments = new String[(int) Math.ceil(message.length() / 7.0)];
-
-        int sequenceNum = 0;
-        int messageStartIDX = 0;
-        int messageEndIDX = 0;
-
-        // Segment message and store in segments array
-        for (int i = 0; i < segments.length; i++){
-            // End of message.  There is less than 7 bytes of data left of message
-            if (message.length() - messageEndIDX < 7){
-                messageEndIDX = message.length();
-
-            // Move to next 7 bytes of message
-            } else {
-                messageEndIDX += 7;
-            }
-
-            // Construct SeqNum + checksum + term byte and prepend it to 7-byte message.  Then store in segments array
-            String temp = String.valueOf(sequenceNum) + "0" + 
-                          (i == segments.length - 1 ? "1" : "0") +
-                          message.substring(messageStartIDX, messageEndIDX);
-            segments[i] = temp;
-            messageStartIDX = messageEndIDX;
-
-            // Alternate sequence number
-            sequenceNum ^= 1;
-        }
-
-        if (sender.connectSocket(args[3], args[4]) < 0){
-            return;
-        }
-
-        
-        String response = "";
-        boolean packetsDelivered = false;
-        
-        // Loop until all packets have been delivered
-        while (!packetsDelivered){
-            for (int i = 0; i < segments.length; i++){
-                System.out.println("Packet: " + (i + 1) + " out of " + segments.length);
-
-                // Send request.  If negative value than a crictical error occured and close the socket
-                if (sender.sendRequest(segments[i], SOURCE_IP, args[0], args[3], args[4], args[1], args[2]) < 0){
-                    sender.closeSocket();
-                    return;
-                }
-
-                boolean ackResponse = false;
-                char seqNumChar;
-
-                //  Loop until an ACK reponse is acheived
-                while (!ackResponse){
-                    seqNumChar = segments[i].charAt(0);
-                    response = sender.receiveResponse(seqNumChar); 
-                    
-                    if (response != null){
-
-                        // Response indicated a checksum or ACK issue
-                        if (response == "ACK||CHECK"){
-
-                            // Attempt to resend packet until successful resending
-                            while(true){
-                                System.out.println("\nFAILED TO SEND PACKET.  RESENDING PACKET...");
-                                sender.sendRequest(segments[i], SOURCE_IP, args[0], args[3], args[4], args[1], args[2]);
-                                response = sender.receiveResponse(seqNumChar).trim();
-                                if (!response.equals("ACK||CHECK") && !response.equals("TIMEOUT") && response != null){
-                                    System.out.println("PACKET RESENT PROPERLY");
-                                    sender.printResponse(response);
-                                    ackResponse = true;
-                                    break;
-                                }
-                            }
-
-                        // Response timout and should attempt to resend packet
-                        } else if (response == "TIMEOUT"){
-                            System.out.println("Error: Exeeced time to wait for response from Receiver.\n Sending packet again");
-                                if (sender.sendRequest(segments[i], SOURCE_IP, args[0], args[3], args[4], args[1], args[2]) < 0){
-                                    sender.closeSocket();
-                                    return;
-                                }
-                        } else {
-                            sender.printResponse(response);
-                            ackResponse = true;
-                        }
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
 
-                    }
-                }
-            }
-            packetsDelivered = true;
+        // Stop-and-wait is sent as a window of one segment.
+        // The socket stays unconnected so ICMP errors for segments the Network drops do not abort the transfer
+        if (sender.sendStream(new ByteArrayInputStream(messageBytes), mode, windowSize) == 0){
+            Log.info(sender.summary());
         }
-
         sender.closeSocket();
-        
     }
 }
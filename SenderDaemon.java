@@ -0,0 +1,371 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program runs a Sender as a long-lived service: its socket, RTT estimate, agreed payload size and connection, and with it the
+* Receiver's session, stay warm from one message to the next, so a message costs a handshake and its segments instead of a JVM start.
+* Messages are queued through send(ByteBuffer), which returns a CompletableFuture completed once the Receiver has ACKed the whole message,
+* and sent one after the other, in the order they were queued, by the daemon's sending thread.
+* With --control-port, other local programs queue messages over a TCP connection to 127.0.0.1: every line they write is sent as a message
+* and answered with "OK <bytes> <microseconds>" once it is acknowledged, or "ERROR <reason>".  Lines typed on stdin are sent as messages too.
+* A message not acknowledged within --message-timeout is abandoned and its future fails, the next one starts a new connection.
+* Messages acknowledged, messages failed, the queue length and the time from queueing a message to its final ACK are published as metrics.
+*
+* Run "java SenderDaemon <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port> [--control-port port] [--queue N]
+*                        [--message-timeout ms] [--mode saw|gbn|sr] [--window N] [--initial-rto ms] [--min-rto ms] [--max-rto ms] [--segment-size bytes]
+*                        [--congestion newreno|cubic|fixed] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]"
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: SenderDaemon.java
+*/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+// SenderDaemon class
+public class SenderDaemon {
+    public static final int DEFAULT_QUEUE_SIZE = 1024;     // Messages waiting to be sent before send() refuses more
+    public static final long DEFAULT_MESSAGE_TIMEOUT = 30000;   // Milliseconds a message may take before it is abandoned
+    public static final long STOP_TIMEOUT_MILLIS = 5000;   // How long stop() waits for the queued messages to be sent
+
+    private static final LongAdder MESSAGES_SENT = Metrics.counter("rdt_sender_daemon_messages_total", "Messages acknowledged completely by the Receiver");
+    private static final LongAdder MESSAGES_FAILED = Metrics.counter("rdt_sender_daemon_failures_total", "Messages refused by a full queue or not acknowledged");
+    private static final Metrics.Histogram MESSAGE_TIME = Metrics.histogram("rdt_sender_daemon_message_seconds", "Time from queueing a message to the ACK of its final segment");
+
+    // Queued in place of a message to make the sending thread finish
+    private static final Message STOP = new Message(new byte[0]);
+
+    private final Sender        _sender;            // Sender with its socket created, only used by the sending thread
+    private final WindowMode    _mode;
+    private final int           _windowSize;
+    private final ArrayBlockingQueue<Message> _queue;
+    private boolean             _running;           // Guarded by _queue, so no message is queued once stop() has queued STOP
+    private Thread              _thread;            // Sending thread
+    private ServerSocket        _control;           // Control channel, null unless started
+
+    /**
+     * A queued message and the future completed when it is acknowledged
+     */
+    private static final class Message {
+        final byte[]            data;
+        final long              queuedAt;           // System.nanoTime() when send() queued it
+        final CompletableFuture<Long> done = new CompletableFuture<Long>();
+
+        Message(byte[] data) {
+            this.data = data;
+            this.queuedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * Creates a daemon sending through a Sender
+     * @param sender     - Sender with its addresses resolved and socket created, owned by the daemon from here on
+     * @param mode       - Retransmission mode of every message
+     * @param windowSize - Window size of every message
+     * @param queueSize  - Messages waiting to be sent before send() refuses more
+     */
+    public SenderDaemon(Sender sender, WindowMode mode, int windowSize, int queueSize) {
+        this._sender = sender;
+        this._mode = mode;
+        this._windowSize = windowSize;
+        this._queue = new ArrayBlockingQueue<Message>(queueSize);
+
+        // Removed again by stop()
+        Metrics.gauge("rdt_sender_daemon_queued_messages", "Messages waiting to be sent", Metrics.instance("sender-daemon", sender.getPort()),
+                      () -> this._queue.size());
+    }
+
+    /**
+     * Starts the sending thread
+     */
+    public void start(){
+        synchronized (this._queue) {
+            this._running = true;
+        }
+        this._thread = new Thread(this::run, "sender-daemon");
+        this._thread.start();
+    }
+
+    /**
+     * Queues a message.  Never blocks: the bytes are copied and the message is sent by the sending thread once those queued before it are done
+     * @param message - Bytes between the buffer's position and limit, the position is advanced past them
+     * @return        - Future completed with the number of bytes once the Receiver has ACKed the whole message; otherwise, completed
+     *                  exceptionally with an IOException if the message could not be sent in time, or an IllegalStateException if the
+     *                  daemon is stopped or its queue is full
+     */
+    public CompletableFuture<Long> send(ByteBuffer message){
+        byte[] data = new byte[message.remaining()];
+        message.get(data);
+        Message queued = new Message(data);
+
+        synchronized (this._queue) {
+            if (!this._running){
+                queued.done.completeExceptionally(new IllegalStateException("Sender daemon stopped"));
+            } else if (!this._queue.offer(queued)){
+                queued.done.completeExceptionally(new IllegalStateException("Sender daemon queue full"));
+            }
+        }
+        if (queued.done.isCompletedExceptionally()){
+            MESSAGES_FAILED.increment();
+        }
+        return queued.done;
+    }
+
+    /**
+     * Sends the queued messages one after the other until the daemon is stopped
+     */
+    private void run(){
+        while (true){
+            Message message;
+            try {
+                message = this._queue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (message == STOP){
+                break;
+            }
+
+            int result = this._sender.sendStream(new ByteArrayInputStream(message.data), this._mode, this._windowSize);
+            if (result == 0){
+                MESSAGES_SENT.increment();
+                MESSAGE_TIME.record(System.nanoTime() - message.queuedAt);
+                message.done.complete((long) message.data.length);
+            } else {
+                MESSAGES_FAILED.increment();
+                message.done.completeExceptionally(new IOException((result == Sender.MESSAGE_TIMEOUT) ? "Message timed out"
+                                                                   : "Message not acknowledged, error " + result));
+            }
+        }
+        this.failQueued();
+    }
+
+    /**
+     * Fails the messages still queued, which are never sent
+     */
+    private void failQueued(){
+        Message message;
+        while ((message = this._queue.poll()) != null){
+            if (message != STOP){
+                MESSAGES_FAILED.increment();
+                message.done.completeExceptionally(new IllegalStateException("Sender daemon stopped"));
+            }
+        }
+    }
+
+    /**
+     * Accepts control connections on 127.0.0.1, each served by a thread of its own
+     * @param port - Local port to listen on
+     * @return     - 0, if the control channel started; otherwise, -1
+     */
+    public int startControl(int port){
+        try {
+            this._control = new ServerSocket();
+            this._control.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            Log.error("Error: Unable to open the control channel on port " + port);
+            return -1;
+        }
+
+        Thread acceptor = new Thread(() -> {
+            while (!this._control.isClosed()){
+                try {
+                    Socket client = this._control.accept();
+                    Thread thread = new Thread(() -> this.serve(client), "sender-daemon-control-" + client.getPort());
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    // Closed by stop()
+                }
+            }
+        }, "sender-daemon-control");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        Log.info("Control channel listening on 127.0.0.1:" + port);
+        return 0;
+    }
+
+    /**
+     * Sends every line a control connection writes as a message and answers each once it is acknowledged, until the connection closes
+     * @param client - Control connection
+     */
+    private void serve(Socket client){
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null){
+                long queuedAt = System.nanoTime();
+                out.write(this.reply(this.send(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8))), queuedAt));
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            Log.error("Error: Control connection failed");
+        }
+    }
+
+    /**
+     * Waits for a queued message to be acknowledged and describes the outcome
+     * @param done     - Future returned by send()
+     * @param queuedAt - System.nanoTime() just before the message was queued
+     * @return         - "OK <bytes> <microseconds>", or "ERROR <reason>"
+     */
+    private String reply(CompletableFuture<Long> done, long queuedAt){
+        try {
+            long bytes = done.get();
+            return "OK " + bytes + " " + (System.nanoTime() - queuedAt) / 1000;
+        } catch (ExecutionException e) {
+            return "ERROR " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "ERROR Interrupted";
+        }
+    }
+
+    /**
+     * Stops taking messages, waits up to STOP_TIMEOUT_MILLIS for the sending thread to send those already queued, then fails the rest
+     * and closes the control channel and the Sender's socket.  Closing the socket fails the message being sent, if any
+     */
+    public void stop(){
+        synchronized (this._queue) {
+            if (!this._running){
+                return;
+            }
+            this._running = false;
+        }
+        if (this._control != null){
+            try {
+                this._control.close();
+            } catch (IOException e) {
+                Log.error("Error: Unable to close the control channel");
+            }
+        }
+        // Nothing is queued once _running is false.  With the queue full, STOP is queued once the rest are failed
+        this._queue.offer(STOP);
+        try {
+            this._thread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.failQueued();
+
+        // A sending thread still busy finds STOP once closing the socket fails its message
+        this._queue.offer(STOP);
+        this._sender.closeSocket();
+        Metrics.removeGauges(Metrics.instance("sender-daemon", this._sender.getPort()));
+    }
+
+    /**
+     * Starts the daemon, sends the lines typed on stdin, and with a control channel keeps serving it once stdin ends
+     * @param args - Sender's addresses followed by options, see the file header
+     */
+    public static void main(String[] args) {
+        if (args.length < 5){
+            Log.error("Usuage: java SenderDaemon <sender_port> <receiver_IP> <receiver_port> <network_IP> <network_Port> [--control-port port] [--queue N] [--message-timeout ms] " +
+                      "[--mode saw|gbn|sr] [--window N] [--initial-rto ms] [--min-rto ms] [--max-rto ms] [--segment-size bytes] " +
+                      "[--congestion newreno|cubic|fixed] [--log-level off|error|info|debug] [--trace path] [--metrics-port port]");
+            return;
+        }
+
+        HashMap<String, String> options = new Utility().parseOptions(args, 5);
+        if (options == null || Log.configure(options) < 0 || Metrics.configure(options, "sender-daemon") < 0){
+            return;
+        }
+
+        WindowMode mode = WindowMode.fromName(options.getOrDefault("mode", "sr"));
+        CongestionControl.Algorithm congestion = CongestionControl.fromName(options.getOrDefault("congestion", "newreno"));
+        int port, windowSize, payloadSize, queueSize, controlPort;
+        long messageTimeout;
+        RttEstimator rtt;
+        try {
+            port = Integer.parseInt(args[0]);
+            windowSize = (mode == WindowMode.STOP_AND_WAIT) ? 1 : Integer.parseInt(options.getOrDefault("window", "8"));
+            payloadSize = Integer.parseInt(options.getOrDefault("segment-size", "1400"));
+            queueSize = Integer.parseInt(options.getOrDefault("queue", String.valueOf(DEFAULT_QUEUE_SIZE)));
+            controlPort = Integer.parseInt(options.getOrDefault("control-port", "-1"));
+            messageTimeout = Long.parseLong(options.getOrDefault("message-timeout", String.valueOf(DEFAULT_MESSAGE_TIMEOUT)));
+            rtt = new RttEstimator(Long.parseLong(options.getOrDefault("initial-rto", String.valueOf(RttEstimator.DEFAULT_INITIAL_RTO))),
+                                   Long.parseLong(options.getOrDefault("min-rto", String.valueOf(RttEstimator.DEFAULT_MIN_RTO))),
+                                   Long.parseLong(options.getOrDefault("max-rto", String.valueOf(RttEstimator.DEFAULT_MAX_RTO))));
+        } catch (NumberFormatException e) {
+            Log.error("Error: Port, window size, segment size, queue size, control port, message timeout and RTO values must be integers");
+            return;
+        }
+        if (mode == null || windowSize < 1 || windowSize > WindowMode.MAX_WINDOW_SIZE){
+            Log.error("Error: Mode must be saw, gbn or sr and window size between 1 and " + WindowMode.MAX_WINDOW_SIZE);
+            return;
+        }
+        if (payloadSize < 1 || payloadSize > NetworkHeader.MAX_PAYLOAD_SIZE){
+            Log.error("Error: Segment size must be between 1 and " + NetworkHeader.MAX_PAYLOAD_SIZE + " bytes");
+            return;
+        }
+        if (queueSize < 1 || messageTimeout < 0){
+            Log.error("Error: Queue size must be at least 1 and message timeout at least 0 ms");
+            return;
+        }
+        if (congestion == null){
+            Log.error("Error: Congestion control must be newreno, cubic or fixed");
+            return;
+        }
+
+        Sender sender = new Sender(port, args[1], args[2], args[3], args[4], rtt);
+        sender.setPayloadSize(payloadSize);
+        sender.setCongestionControl(congestion);
+        sender.setMessageTimeout(messageTimeout);
+        if (sender.resolveAddresses() < 0){
+            return;
+        }
+        if (sender.createSocket() < 0){
+            Log.error("Error: Failed to create socket at port " + args[0]);
+            return;
+        }
+
+        SenderDaemon daemon = new SenderDaemon(sender, mode, windowSize, queueSize);
+        daemon.start();
+        if (controlPort >= 0 && daemon.startControl(controlPort) < 0){
+            daemon.stop();
+            return;
+        }
+        Log.info("Sender daemon started." + " Port: " + args[0]);
+
+        // Every line typed on stdin is a message
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null){
+                long queuedAt = System.nanoTime();
+                Log.info(daemon.reply(daemon.send(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8))), queuedAt));
+            }
+        } catch (IOException e) {
+            Log.error("Error: Unable to read stdin");
+        }
+
+        // The control channel serves until the daemon is killed
+        if (controlPort >= 0){
+            try {
+                daemon._thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        daemon.stop();
+    }
+}
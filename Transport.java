@@ -0,0 +1,117 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the datagram transport the Sender, Receiver and Network send and receive packets on.
+* UDP (see UdpTransport) carries packets between processes through the kernel.  The in-memory transport (see MemoryTransport)
+* hands packets between the roles of one JVM through lock-free queues, so the protocol can be measured without system calls.
+* A transport is used either as an endpoint, like the Sender and Receiver do, with blocking receives that time out,
+* or as a relay, like the Network does, waiting for packets and then draining them without blocking.  Never as both.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: Transport.java
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+// Transport interface
+public interface Transport extends Closeable {
+    // Supported transports
+    public enum Kind { UDP, MEMORY }
+
+    /**
+     * Looks up a transport by its command line name
+     * @param name - "udp" or "memory" (case insensitive)
+     * @return     - Matching transport, or null if the name is unknown
+     */
+    public static Kind fromName(String name){
+        try {
+            return Kind.valueOf(name.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Opens a transport bound to a port
+     * @param kind - Transport to open
+     * @param port - Port to bind to
+     * @return     - The bound transport
+     * @throws IOException - If the port cannot be bound
+     */
+    public static Transport open(Kind kind, int port) throws IOException {
+        switch (kind) {
+            case MEMORY:
+                return new MemoryTransport(port);
+            default:
+                return new UdpTransport(port);
+        }
+    }
+
+    /**
+     * @return - Port the transport is bound to
+     */
+    public int localPort();
+
+    /**
+     * Only exchanges datagrams with one peer from now on
+     * @param peer - Address of the peer
+     * @throws IOException - If the transport cannot be connected
+     */
+    public void connect(InetSocketAddress peer) throws IOException;
+
+    /**
+     * Sets how long receive(DatagramPacket) waits for a datagram
+     * @param timeoutMillis - Milliseconds to wait, 0 to wait forever
+     * @throws IOException - If the transport is closed
+     */
+    public void setTimeout(int timeoutMillis) throws IOException;
+
+    /**
+     * Sends a datagram to the address and port of the packet.  The packet may be reused as soon as this returns
+     * @param packet - Datagram to send
+     * @throws IOException - If the datagram cannot be sent
+     */
+    public void send(DatagramPacket packet) throws IOException;
+
+    /**
+     * Receives the next datagram, waiting no longer than the timeout
+     * @param packet - Datagram to receive into, its length, address and port are set to those of the received datagram
+     * @throws java.net.SocketTimeoutException - If no datagram arrived before the timeout
+     * @throws IOException - If the transport is closed or the datagram cannot be received
+     */
+    public void receive(DatagramPacket packet) throws IOException;
+
+    /**
+     * Sends the bytes between a buffer's position and limit as one datagram without blocking
+     * @param packet      - Buffer holding the datagram, its position is advanced past the bytes sent
+     * @param destination - Address to send the datagram to
+     * @return            - Bytes sent, 0 if there was no room for the datagram and it was dropped
+     * @throws IOException - If the datagram cannot be sent
+     */
+    public int send(ByteBuffer packet, InetSocketAddress destination) throws IOException;
+
+    /**
+     * Receives a datagram without blocking
+     * @param buffer - Buffer to receive the datagram into from its position
+     * @return       - Address the datagram came from, or null if none is waiting
+     * @throws IOException - If the datagram cannot be received
+     */
+    public InetSocketAddress receive(ByteBuffer buffer) throws IOException;
+
+    /**
+     * Waits until a datagram may be waiting to be received, or wakeup() is called
+     * @throws IOException - If the transport is closed
+     */
+    public void await() throws IOException;
+
+    /**
+     * Makes the current or next await() return at once.  Called from another thread
+     */
+    public void wakeup();
+}
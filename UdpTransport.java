@@ -0,0 +1,132 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program carries datagrams over UDP, the transport the Sender, Receiver and Network always used.
+* It is built on a DatagramChannel.  Endpoints use the channel in blocking mode through its socket, so receives time out like
+* a DatagramSocket's.  The first relay call switches the channel to non-blocking mode and registers it with a Selector,
+* which await() waits on.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: UdpTransport.java
+*/
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+// UdpTransport class
+public class UdpTransport implements Transport {
+    private final DatagramChannel   _channel;
+    private final DatagramSocket    _socket;        // Blocking view of the channel used by endpoints
+    private volatile Selector       _selector;      // Opened by the first relay call, null for endpoints
+
+    /**
+     * Opens a UDP socket bound to a port
+     * @param port - Port to bind to
+     * @throws IOException - If the port cannot be bound
+     */
+    public UdpTransport(int port) throws IOException {
+        this._channel = DatagramChannel.open();
+        try {
+            this._channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            this._channel.close();
+            throw e;
+        }
+        this._socket = this._channel.socket();
+    }
+
+    /**
+     * Switches the channel to non-blocking mode and registers it with the Selector, the first time the transport is used as a relay
+     * @return - Selector the channel is registered with
+     * @throws IOException - If the Selector cannot be opened
+     */
+    private Selector relay() throws IOException {
+        Selector selector = this._selector;
+        if (selector != null){
+            return selector;
+        }
+        synchronized (this) {
+            if (this._selector == null){
+                selector = Selector.open();
+                this._channel.configureBlocking(false);
+                this._channel.register(selector, SelectionKey.OP_READ);
+                this._selector = selector;
+            }
+            return this._selector;
+        }
+    }
+
+    @Override
+    public int localPort(){
+        return this._socket.getLocalPort();
+    }
+
+    @Override
+    public void connect(InetSocketAddress peer) throws IOException {
+        this._channel.connect(peer);
+    }
+
+    @Override
+    public void setTimeout(int timeoutMillis) throws IOException {
+        this._socket.setSoTimeout(timeoutMillis);
+    }
+
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        this._socket.send(packet);
+    }
+
+    @Override
+    public void receive(DatagramPacket packet) throws IOException {
+        this._socket.receive(packet);
+    }
+
+    @Override
+    public int send(ByteBuffer packet, InetSocketAddress destination) throws IOException {
+        this.relay();
+        return this._channel.send(packet, destination);
+    }
+
+    @Override
+    public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+        this.relay();
+        return (InetSocketAddress) this._channel.receive(buffer);
+    }
+
+    @Override
+    public void await() throws IOException {
+        Selector selector = this.relay();
+        selector.select();
+        selector.selectedKeys().clear();
+    }
+
+    @Override
+    public void wakeup(){
+        Selector selector = this._selector;
+        if (selector != null){
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        Selector selector = this._selector;
+        if (selector != null){
+            selector.close();
+        }
+        this._channel.close();
+    }
+
+    @Override
+    public String toString(){
+        return "udp:" + this.localPort();
+    }
+}
@@ -1,9 +1,9 @@
 /** 
 * This program is part of the sender/receiver RDT on UDP implemetation project
-* The program defines a "Utility class" that handles the network header for RDT.
-* Includes a function that creates a network header by combining source IP, source port, destination IP, destination port, and a message. 
-* Includes a function that parses the network header into individual portions. 
-* Program has a debugging function to print the individual portions of the network header. 
+* The program defines a "Utility class" that handles setup shared by the programs of the RDT project.
+* Includes functions that convert IPv4 addresses between host names, the int form used in the binary NetworkHeader, and InetAddress objects.
+* Includes a function that parses optional command line arguments.
+* Program has a debugging function to print the individual fields of the network header. 
 * And it also has a function that constructs a DatagramPacket object using the network header data, destination address, and port number.
 
 * @authors:   Ben Yanick and Gina  Wittman
@@ -26,87 +26,94 @@ public class Utility {
     }
 
     /**
-     * Creates the network header for RDT packet.  Used by Receiver and Sender classes.
-     * @param srcIP     - Source IP address
-     * @param srcPort   - Source port number
-     * @param destIP    - Desitination IP address
-     * @param destPort  - Desitination port number
-     * @param message   - Message of RDT packet
-     * @return          - Network header as a single String
+     * Resolves a host name or dotted decimal address to the int form stored in the network header.
+     * Only called while setting up, never per packet
+     * @param hostname - Host name or IPv4 address
+     * @return         - IPv4 address as an int
+     * @throws UnknownHostException if the host cannot be resolved to an IPv4 address
      */
-    public String createNetworkHeader(String srcIP, String srcPort, String destIP, String destPort, String message){
-        String networkHeader = srcIP + "-" + 
-                               srcPort + "-" +
-                               destIP + "-" +
-                               destPort + "-" +
-                               message;
-
-        return networkHeader;
-    };
+    public int resolveIP(String hostname) throws UnknownHostException {
+        byte[] address = InetAddress.getByName(hostname).getAddress();
+        if (address.length != 4){
+            throw new UnknownHostException("Not an IPv4 address: " + hostname);
+        }
+        return ((address[0] & 0xFF) << 24) | ((address[1] & 0xFF) << 16) | ((address[2] & 0xFF) << 8) | (address[3] & 0xFF);
+    }
 
     /**
-     * Breaks the network into individual portions (i.e. srcIP, srcPort, destIP, etc.)
-     * @param networkHeader - String representing entire network header (including message)
-     * @return              - HashMap of network header portions as key-value pairs
+     * Converts an IPv4 address held in an int back to an InetAddress without a name lookup
+     * @param address - IPv4 address as stored in the network header
+     * @return        - The InetAddress
      */
-    public HashMap<String, String> parseNetworkHeader(String networkHeader){
-        String[] portions = networkHeader.split("-");
-
-        HashMap<String, String> networkPortions = new HashMap<String, String>();
-
-        networkPortions.put("srcIP", portions[0]);
-        networkPortions.put("srcPort", portions[1]);
-        networkPortions.put("destIP", portions[2]);
-        networkPortions.put("destPort", portions[3]);
-        networkPortions.put("message", portions[4]);
-
-        return networkPortions;
+    public InetAddress toInetAddress(int address){
+        byte[] bytes = {(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException ex) {
+            // Only thrown for addresses of illegal length
+            throw new IllegalStateException(ex);
+        }
     }
-    
+
     /**
-     * Debugging function to quickly print the portions of the network header while testing overall program
-     * @param portions - HashMap containing all portions of the network header being passed across the simulated network
+     * Debugging function to quickly print the fields of the network header while testing overall program
+     * @param header - Network header viewing the packet being passed across the simulated network
      */
-    public void printNetworkHeaderPortions(HashMap<String, String> portions){
-        System.out.println("srcIP: " + portions.get("srcIP"));
-        System.out.println("srcPort: " + portions.get("srcPort"));
-        System.out.println("destIP: " + portions.get("destIP"));
-        System.out.println("destPort: " + portions.get("destPort"));
-        System.out.println("message: " + portions.get("message"));
+    public void printNetworkHeader(NetworkHeader header){
+        Log.info("srcIP: " + NetworkHeader.ipToString(header.srcIP()));
+        Log.info("srcPort: " + header.srcPort());
+        Log.info("destIP: " + NetworkHeader.ipToString(header.destIP()));
+        Log.info("destPort: " + header.destPort());
+        Log.info("seq: " + header.seq());
+        Log.info("ack: " + header.ack());
+        Log.info("flags: " + header.flags());
+        Log.info("checksum: " + header.checksum());
+        Log.info("message: " + header.payloadString());
     }
 
     /**
-     * Constructs the datagram packet (called by Sender and Receiver since they create packets)
-     * @param networkHeader - Network header for packet
-     * @param hostname      - IP address the packet is being sent to
-     * @param port          - Port the packet is being sent to
-     * @param bufferSize    - Buffer size of the receiving programs receiveRequest method
-     * @return              - The created datagram packet
+     * Parses the optional "--name value" arguments that follow the required command line arguments
+     * @param args  - Command line arguments passed to main
+     * @param start - Index of the first optional argument
+     * @return      - HashMap of option names (without the leading dashes) to values, or null if the options are malformed
      */
-    public DatagramPacket createDatagramPacket(String networkHeader, String hostname, String port, int bufferSize){
-        byte buffer[] = new byte[bufferSize];
-
-        // Initialize buffer with empty message
-        for (int i = 0; i < bufferSize; i++) {
-            buffer[i] = '\0';
+    public HashMap<String, String> parseOptions(String[] args, int start){
+        HashMap<String, String> options = new HashMap<String, String>();
+
+        for (int i = start; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                Log.error("Error: Options must be given as --name value pairs");
+                return null;
+            }
+            options.put(args[i].substring(2), args[i + 1]);
         }
 
-        // copy message into buffer
-        byte message[] = networkHeader.getBytes();
-        System.arraycopy(message, 0, buffer, 0, Math.min(message.length, buffer.length));
+        return options;
+    }
 
-        
-        // Try to create the datagram packet
-        try {
-            return new DatagramPacket(buffer, 
-                                      bufferSize, 
-                                      InetAddress.getByName(hostname),
-                                      Integer.parseInt(port));
-        } catch (UnknownHostException ex) {
-            System.err.println("Error: Not a valid host address provided");
-            return null;
-        }
+    /**
+     * Constructs the datagram packet (called by Sender and Receiver since they create packets)
+     * @param header  - Network header viewing the packet bytes, payload included
+     * @param address - IP address the packet is being sent to
+     * @param port    - Port the packet is being sent to
+     * @return        - The created datagram packet, sized to the header and payload
+     */
+    public DatagramPacket createDatagramPacket(NetworkHeader header, InetAddress address, int port){
+        return new DatagramPacket(header.buffer().array(), header.packetLength(), address, port);
+    }
 
-        
+    /**
+     * Points a reusable datagram packet at a network header's packet, so sending allocates nothing
+     * @param packet  - Datagram packet to reuse
+     * @param header  - Network header viewing the packet bytes, payload included
+     * @param address - IP address the packet is being sent to
+     * @param port    - Port the packet is being sent to
+     * @return        - The same datagram packet, sized to the header and payload
+     */
+    public DatagramPacket fillDatagramPacket(DatagramPacket packet, NetworkHeader header, InetAddress address, int port){
+        packet.setData(header.buffer().array(), 0, header.packetLength());
+        packet.setAddress(address);
+        packet.setPort(port);
+        return packet;
     }
 }
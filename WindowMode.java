@@ -0,0 +1,38 @@
+/**
+* This program is part of the sender/receiver RDT on UDP implemetation project
+* The program defines the retransmission modes shared by the Sender and Receiver.
+* Stop-and-wait keeps a single segment in flight, while Go-Back-N and Selective Repeat pipeline a window of segments.
+
+* @authors:   Ben Yanick and Gina  Wittman
+* @date:      08/08/2023
+
+* COP5518 Project2
+* File name: WindowMode.java
+*/
+
+// WindowMode enum
+public enum WindowMode {
+    STOP_AND_WAIT,
+    GO_BACK_N,
+    SELECTIVE_REPEAT;
+
+    public static final int MAX_WINDOW_SIZE = 4096;   // Largest window allowed, bounds the Receiver's out-of-order buffer
+
+    /**
+     * Looks up a mode by its command line name
+     * @param name - "saw", "gbn" or "sr" (case insensitive)
+     * @return     - Matching mode, or null if the name is unknown
+     */
+    public static WindowMode fromName(String name){
+        switch (name.toLowerCase()) {
+            case "saw":
+                return STOP_AND_WAIT;
+            case "gbn":
+                return GO_BACK_N;
+            case "sr":
+                return SELECTIVE_REPEAT;
+            default:
+                return null;
+        }
+    }
+}